@@ -0,0 +1,232 @@
+package kc.utils.minilogger;
+
+/**
+ * Carries the parameters of a Log call from Log through MiniLogger to the LineFormatter without boxing primitives or
+ * allocating an array. Instances are reused per thread: the fixed-arity factory methods fill the calling threads
+ * instance, and MiniLogger releases it once the call is done. A call nested into another one on the same thread,
+ * e.g. from a toString method, gets a fresh instance.
+ *
+ * Primitives keep their kind, so that they are formatted exactly like their wrappers would be: integral types and chars
+ * are kept in the longs, floats in the doubles.
+ */
+final class Args {
+
+    static final int MAX_COUNT = 4;
+
+    private static final byte OBJECT = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte CHAR = 3;
+    private static final byte FLOAT = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte BYTE = 6;
+    private static final byte SHORT = 7;
+
+    private static final ThreadLocal<Args> CACHE = new ThreadLocal<Args>() {
+        @Override
+        protected Args initialValue() {
+            return new Args();
+        }
+    };
+
+    private final byte[] kinds = new byte[MAX_COUNT];
+    private final Object[] objects = new Object[MAX_COUNT];
+    private final long[] longs = new long[MAX_COUNT];
+    private final double[] doubles = new double[MAX_COUNT];
+    private Object[] array = null;
+    private int count = 0;
+    private boolean isInUse = false;
+
+    private static Args acquire() {
+        Args args = CACHE.get();
+        if (args.isInUse) {
+            args = new Args();
+        }
+        args.isInUse = true;
+        args.array = null;
+        args.count = 0;
+        return args;
+    }
+
+    static Args wrap(Object[] params) {
+        Args args = acquire();
+        args.array = params == null ? new Object[] {null} : params;
+        args.count = args.array.length;
+        return args;
+    }
+
+    static Args of() {
+        return acquire();
+    }
+
+    static Args of(Object a) {
+        return acquire().add(a);
+    }
+
+    static Args of(Object a, Object b) {
+        return acquire().add(a).add(b);
+    }
+
+    static Args of(Object a, Object b, Object c) {
+        return acquire().add(a).add(b).add(c);
+    }
+
+    static Args of(Object a, Object b, Object c, Object d) {
+        return acquire().add(a).add(b).add(c).add(d);
+    }
+
+    static Args of(int a) {
+        return acquire().add(INT, a);
+    }
+
+    static Args of(byte a) {
+        return acquire().add(BYTE, a);
+    }
+
+    static Args of(short a) {
+        return acquire().add(SHORT, a);
+    }
+
+    static Args of(char a) {
+        return acquire().add(CHAR, a);
+    }
+
+    static Args of(long a) {
+        return acquire().add(LONG, a);
+    }
+
+    static Args of(float a) {
+        return acquire().add(FLOAT, a);
+    }
+
+    static Args of(double a) {
+        return acquire().add(DOUBLE, a);
+    }
+
+    private Args add(Object value) {
+        this.kinds[this.count] = OBJECT;
+        this.objects[this.count++] = value;
+        return this;
+    }
+
+    private Args add(byte kind, long value) {
+        this.kinds[this.count] = kind;
+        this.longs[this.count++] = value;
+        return this;
+    }
+
+    private Args add(byte kind, double value) {
+        this.kinds[this.count] = kind;
+        this.doubles[this.count++] = value;
+        return this;
+    }
+
+    /**
+     * Makes this instance available for reuse by its thread and drops the references it holds.
+     */
+    void release() {
+        for (int i = 0; i < MAX_COUNT; i++) {
+            this.objects[i] = null;
+        }
+        this.array = null;
+        this.isInUse = false;
+    }
+
+    /**
+     * Copies the parameters of the given instance into this one, which must not be a per-thread instance.
+     */
+    void copyFrom(Args other) {
+        this.array = other.array;
+        this.count = other.count;
+        if (other.array == null) {
+            System.arraycopy(other.kinds, 0, this.kinds, 0, other.count);
+            System.arraycopy(other.objects, 0, this.objects, 0, other.count);
+            System.arraycopy(other.longs, 0, this.longs, 0, other.count);
+            System.arraycopy(other.doubles, 0, this.doubles, 0, other.count);
+        }
+    }
+
+    int count() {
+        return this.count;
+    }
+
+    /**
+     * @return true if the parameter at the given index has been passed as a primitive and is kept unboxed
+     */
+    boolean isPrimitive(int index) {
+        return this.array == null && this.kinds[index] != OBJECT;
+    }
+
+    /**
+     * @return true if the parameter at the given index has been passed as a byte, short, int, or long, see getLong
+     */
+    boolean isIntegral(int index) {
+        byte kind = this.kinds[index];
+        return this.array == null && (kind == BYTE || kind == SHORT || kind == INT || kind == LONG);
+    }
+
+    long getLong(int index) {
+        return this.longs[index];
+    }
+
+    /**
+     * Appends the primitive parameter at the given index like String.valueOf would for its wrapper.
+     */
+    void appendPrimitive(StringBuilder line, int index) {
+        switch (this.kinds[index]) {
+            case CHAR:
+                line.append((char) this.longs[index]);
+                break;
+            case FLOAT:
+                line.append((float) this.doubles[index]);
+                break;
+            case DOUBLE:
+                line.append(this.doubles[index]);
+                break;
+            default:
+                line.append(this.longs[index]);
+                break;
+        }
+    }
+
+    /**
+     * @return the parameter at the given index, boxed to the wrapper of its original kind if it is a primitive
+     */
+    Object get(int index) {
+        if (this.array != null) {
+            return this.array[index];
+        }
+        switch (this.kinds[index]) {
+            case BYTE:
+                return (byte) this.longs[index];
+            case SHORT:
+                return (short) this.longs[index];
+            case INT:
+                return (int) this.longs[index];
+            case LONG:
+                return this.longs[index];
+            case CHAR:
+                return (char) this.longs[index];
+            case FLOAT:
+                return (float) this.doubles[index];
+            case DOUBLE:
+                return this.doubles[index];
+            default:
+                return this.objects[index];
+        }
+    }
+
+    /**
+     * @return all parameters, primitives boxed, as used by String.format
+     */
+    Object[] toArray() {
+        if (this.array != null) {
+            return this.array;
+        }
+        Object[] params = new Object[this.count];
+        for (int i = 0; i < this.count; i++) {
+            params[i] = get(i);
+        }
+        return params;
+    }
+}
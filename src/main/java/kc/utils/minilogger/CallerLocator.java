@@ -0,0 +1,94 @@
+package kc.utils.minilogger;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Finds the call site a line is logged from, rendered as the simple class name, the method name, and the line
+ * number, e.g. Server.handle:42. The stack is walked lazily with a StackWalker, up to the first frame outside of
+ * MiniLogger's own classes, so that only the top frames are ever materialized. Locations are memoized per class,
+ * method, and byte code index, so that the line number and the rendered location are computed once per call site.
+ * Memoized locations are kept in a ClassValue, and do not keep the classes they belong to from being unloaded.
+ */
+class CallerLocator {
+
+    static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    private static final ClassValue<ConcurrentMap<CallSite, String>> LOCATIONS = new ClassValue<ConcurrentMap<CallSite, String>>() {
+        @Override
+        protected ConcurrentMap<CallSite, String> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<CallSite, String>();
+        }
+    };
+
+    private static final Predicate<StackWalker.StackFrame> IS_CALLER = new Predicate<StackWalker.StackFrame>() {
+        @Override
+        public boolean test(StackWalker.StackFrame frame) {
+            return !isLoggingClass(frame.getDeclaringClass());
+        }
+    };
+
+    private static final Function<Stream<StackWalker.StackFrame>, Optional<StackWalker.StackFrame>> FIND_CALLER =
+            new Function<Stream<StackWalker.StackFrame>, Optional<StackWalker.StackFrame>>() {
+                @Override
+                public Optional<StackWalker.StackFrame> apply(Stream<StackWalker.StackFrame> frames) {
+                    return frames.filter(IS_CALLER).findFirst();
+                }
+            };
+
+    private CallerLocator() {
+    }
+
+    /**
+     * @return the location of the first caller outside of MiniLogger's own classes, or null if there is none
+     */
+    static String locate() {
+        StackWalker.StackFrame frame = STACK_WALKER.walk(FIND_CALLER).orElse(null);
+        if (frame == null) {
+            return null;
+        }
+
+        ConcurrentMap<CallSite, String> locations = LOCATIONS.get(frame.getDeclaringClass());
+        CallSite callSite = new CallSite(frame.getMethodName(), frame.getByteCodeIndex());
+        String location = locations.get(callSite);
+        if (location == null) {
+            String className = frame.getClassName();
+            location = className.substring(className.lastIndexOf('.') + 1) + '.' + frame.getMethodName() + ':' + frame.getLineNumber();
+            locations.put(callSite, location);
+        }
+        return location;
+    }
+
+    // the classes a line passes through on its way from the call site to the MiniLogger
+    private static boolean isLoggingClass(Class<?> type) {
+        return type == MiniLogger.class || type == Log.class || type == Timer.class || type == CallerLocator.class;
+    }
+
+    private static final class CallSite {
+        private final String methodName;
+        private final int byteCodeIndex;
+
+        CallSite(String methodName, int byteCodeIndex) {
+            this.methodName = methodName;
+            this.byteCodeIndex = byteCodeIndex;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof CallSite)) {
+                return false;
+            }
+            CallSite that = (CallSite) other;
+            return this.byteCodeIndex == that.byteCodeIndex && this.methodName.equals(that.methodName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.methodName.hashCode() + this.byteCodeIndex;
+        }
+    }
+}
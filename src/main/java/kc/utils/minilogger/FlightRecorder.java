@@ -0,0 +1,109 @@
+package kc.utils.minilogger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the most recent suppressed debug calls in memory, unformatted, so that they can be formatted and written
+ * once something goes wrong. Calls are recorded into fixed-size ring buffers, one per stripe of threads, so that
+ * recording neither allocates nor contends much. Primitive params are copied, while other params and Throwables are
+ * kept by reference; they are formatted with the state they have at dump time.
+ */
+class FlightRecorder {
+
+    static class Event {
+        long millis;
+        String logName;
+        Throwable throwable;
+        String pattern;
+        final Args args = new Args();
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Event[] events;
+        private int next = 0;
+        private int count = 0;
+
+        Stripe(int capacity) {
+            this.events = new Event[capacity];
+            for (int i = 0; i < capacity; i++) {
+                this.events[i] = new Event();
+            }
+        }
+    }
+
+    // stripes keep at least this many events, so that small recorders are not spread too thin
+    private static final int MIN_STRIPE_CAPACITY = 64;
+
+    private final Stripe[] stripes;
+
+    FlightRecorder(int size) {
+        int stripeCount = Math.min(Integer.highestOneBit(Math.max(1, size / MIN_STRIPE_CAPACITY)),
+                                   Integer.highestOneBit(2 * Runtime.getRuntime().availableProcessors()));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe((size + stripeCount - 1) / stripeCount);
+        }
+    }
+
+    void record(long millis, String logName, Throwable throwable, String pattern, Args args) {
+        Stripe stripe = this.stripes[(int) Thread.currentThread().getId() & (this.stripes.length - 1)];
+        stripe.lock.lock();
+        try {
+            Event event = stripe.events[stripe.next];
+            event.millis = millis;
+            event.logName = logName;
+            event.throwable = throwable;
+            event.pattern = pattern;
+            event.args.copyFrom(args);
+            stripe.next = (stripe.next + 1) % stripe.events.length;
+            stripe.count = Math.min(stripe.count + 1, stripe.events.length);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all recorded events.
+     *
+     * @return the removed events, oldest first
+     */
+    List<Event> drain() {
+        List<Event> drained = new ArrayList<Event>();
+        for (Stripe stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                int capacity = stripe.events.length;
+                for (int i = stripe.count; i > 0; i--) {
+                    Event event = stripe.events[(stripe.next - i + capacity) % capacity];
+                    Event copy = new Event();
+                    copy.millis = event.millis;
+                    copy.logName = event.logName;
+                    copy.throwable = event.throwable;
+                    copy.pattern = event.pattern;
+                    copy.args.copyFrom(event.args);
+                    drained.add(copy);
+
+                    // do not keep params reachable after the dump
+                    event.throwable = null;
+                    event.args.release();
+                }
+                stripe.count = 0;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        Collections.sort(drained, new Comparator<Event>() {
+            @Override
+            public int compare(Event a, Event b) {
+                return Long.compare(a.millis, b.millis);
+            }
+        });
+        return drained;
+    }
+}
@@ -0,0 +1,158 @@
+package kc.utils.minilogger;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Makes lines durable in batches. Writers register every line they appended to the current file and then wait until
+ * a commit covers it. The first waiter becomes the leader: it waits up to maxWait for more lines to arrive, or until
+ * batchSize lines are pending, and then forces the file once for everybody who arrived in the meantime.
+ */
+class GroupCommitter {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition arrived = this.lock.newCondition();
+    private final Condition committed = this.lock.newCondition();
+    private final Histogram latencies = new Histogram();
+
+    private volatile long maxWaitMicros;
+    private volatile int batchSize;
+
+    private FileChannel channel;
+    private long appendedSequence = 0;
+    private long committedSequence = 0;
+    private boolean isCommitting = false;
+
+    GroupCommitter(long maxWaitMicros, int batchSize) {
+        this.maxWaitMicros = maxWaitMicros;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Registers a line appended to the given channel. Must be called holding the MiniLoggers write lock, right after
+     * the line has been written.
+     *
+     * @return the sequence number to pass to awaitCommit
+     */
+    long appended(FileChannel channel) {
+        this.lock.lock();
+        try {
+            this.channel = channel;
+            this.appendedSequence++;
+            if (this.appendedSequence - this.committedSequence >= this.batchSize) {
+                this.arrived.signal();
+            }
+            return this.appendedSequence;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Forces everything appended to the given channel so far. Must be called holding the MiniLoggers write lock before
+     * the channel gets closed on roll.
+     */
+    void beforeClose(FileChannel channel) {
+        long target;
+        this.lock.lock();
+        try {
+            target = this.appendedSequence;
+        } finally {
+            this.lock.unlock();
+        }
+
+        try {
+            force(channel);
+        } finally {
+            markCommitted(target);
+        }
+    }
+
+    /**
+     * Blocks until the line with the given sequence number has been forced to disk, possibly forcing it as the leader
+     * of a batch.
+     *
+     * @param sequence the sequence number returned by appended
+     */
+    void awaitCommit(long sequence) {
+        long start = System.nanoTime();
+        this.lock.lock();
+        try {
+            while (this.committedSequence < sequence) {
+                if (this.isCommitting) {
+                    this.committed.awaitUninterruptibly();
+                } else {
+                    commitAsLeader(start);
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        this.latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+
+    // must be called holding the lock, releases it while forcing
+    private void commitAsLeader(long start) {
+        this.isCommitting = true;
+
+        long deadline = start + TimeUnit.MICROSECONDS.toNanos(this.maxWaitMicros);
+        for (long remaining = deadline - System.nanoTime();
+             remaining > 0 && this.appendedSequence - this.committedSequence < this.batchSize;
+             remaining = deadline - System.nanoTime()) {
+            try {
+                this.arrived.awaitNanos(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        long target = this.appendedSequence;
+        FileChannel channel = this.channel;
+        this.lock.unlock();
+        try {
+            force(channel);
+        } finally {
+            this.lock.lock();
+            this.isCommitting = false;
+            this.committedSequence = Math.max(this.committedSequence, target);
+            this.committed.signalAll();
+        }
+    }
+
+    private void markCommitted(long target) {
+        this.lock.lock();
+        try {
+            this.committedSequence = Math.max(this.committedSequence, target);
+            this.committed.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private static void force(FileChannel channel) {
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // the file got rolled meanwhile, which forces it before closing
+        } catch (IOException e) {
+            throw new RuntimeException("cannot commit log file to disk!", e);
+        }
+    }
+
+    Histogram getLatencies() {
+        return this.latencies.copy();
+    }
+
+    void setMaxWaitMicros(long maxWaitMicros) {
+        this.maxWaitMicros = maxWaitMicros;
+    }
+
+    void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+}
@@ -0,0 +1,63 @@
+package kc.utils.minilogger;
+
+/**
+ * A Log name and pattern that accounts for many of the lines logged, see MiniLogger.getHeavyHitters. The numbers
+ * are estimates that may be too high, but never too low, since they are taken from a sketch of fixed size.
+ */
+public final class HeavyHitter {
+
+    private final String logName;
+    private final String pattern;
+    private final long lines;
+    private final long suppressedLines;
+    private final long bytes;
+
+    HeavyHitter(String logName, String pattern, long lines, long suppressedLines, long bytes) {
+        this.logName = logName;
+        this.pattern = pattern;
+        this.lines = lines;
+        this.suppressedLines = suppressedLines;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return the name of the Log, e.g. to pass to MiniLogger.mute
+     */
+    public String getLogName() {
+        return this.logName;
+    }
+
+    /**
+     * @return the pattern the lines have been logged with
+     */
+    public String getPattern() {
+        return this.pattern;
+    }
+
+    /**
+     * @return the number of calls, including the suppressed ones
+     */
+    public long getLines() {
+        return this.lines;
+    }
+
+    /**
+     * @return the number of calls suppressed, i.e. debug lines that have not been written and progress lines that
+     * have been skipped
+     */
+    public long getSuppressedLines() {
+        return this.suppressedLines;
+    }
+
+    /**
+     * @return the number of bytes written, excluding the suppressed lines
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    @Override
+    public String toString() {
+        return this.logName + " '" + this.pattern + "': lines=" + this.lines + " suppressed=" + this.suppressedLines + " bytes=" + this.bytes;
+    }
+}
@@ -0,0 +1,242 @@
+package kc.utils.minilogger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks which Log names and patterns account for the most lines, in fixed memory. Lines, suppressed lines, and
+ * bytes are counted per Log name and pattern in count-min sketches of DEPTH rows of WIDTH cells each, which
+ * overestimate a count only by the counts of the keys it collides with in every row. The three counters of a cell sit
+ * next to each other, so that counting a line touches one cache line per row.
+ *
+ * The sketch is split into stripes, about 100 KB each, shared by a subset of threads each, so that threads logging the
+ * same lines do not contend on the same counters. A stripe counts the lines of its threads only; estimates sum up a
+ * cell over all stripes. A tracker for the next interval can take over the stripes of a retired one, see the
+ * constructor, so that starting an interval does not allocate them again.
+ *
+ * The heaviest keys seen so far are kept as candidates, up to the given size. A line of a candidate only increments
+ * the sketches; a line of any other key is only considered for admission once its estimate exceeds the admission
+ * threshold, the smallest estimate among the candidates, and then replaces the candidate with that estimate. Only
+ * admissions take a lock, and they become rare as the threshold rises.
+ */
+class HeavyHitters {
+
+    static final int DEPTH = 4;
+    static final int WIDTH = 1024;
+    static final int MAX_STRIPES = 8;
+
+    // the offsets of the counters within a cell
+    private static final int LINES = 0;
+    private static final int SUPPRESSED_LINES = 1;
+    private static final int BYTES = 2;
+    private static final int COUNTERS = 3;
+
+    private static final class Candidate {
+        private final long key;
+        private final String logName;
+        private final String pattern;
+
+        Candidate(long key, String logName, String pattern) {
+            this.key = key;
+            this.logName = logName;
+            this.pattern = pattern;
+        }
+
+        boolean is(long key, String logName, String pattern) {
+            return this.key == key && equals(this.pattern, pattern) && equals(this.logName, logName);
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == b || (a != null && a.equals(b));
+        }
+    }
+
+    private final int size;
+    private final long interval;
+    private final AtomicLongArray[] stripes;
+    private final LongAdder totalLines = new LongAdder();
+    private final long startMillis = System.currentTimeMillis();
+    private final AtomicLong nextReportMillis;
+
+    // copied on write under the lock, so that looking up a candidate never locks
+    private volatile Candidate[] candidates = new Candidate[0];
+    private volatile long admissionThreshold = 0;
+    private final ReentrantLock candidatesLock = new ReentrantLock();
+
+    HeavyHitters(int size, long interval) {
+        this(size, interval, null);
+    }
+
+    /**
+     * Creates a tracker taking over the stripes of the given retired one, which are cleared and must no longer be
+     * recorded to nor read from, i.e. no line may still be in flight to the retired tracker.
+     */
+    HeavyHitters(int size, long interval, HeavyHitters retired) {
+        this.size = size;
+        this.interval = interval;
+        this.nextReportMillis = new AtomicLong(this.startMillis + interval);
+        int stripes = Integer.highestOneBit(Math.min(Runtime.getRuntime().availableProcessors(), MAX_STRIPES));
+        if (retired != null && retired.stripes.length == stripes) {
+            this.stripes = retired.stripes;
+            for (AtomicLongArray stripe : this.stripes) {
+                for (int i = 0; i < stripe.length(); i++) {
+                    stripe.set(i, 0);
+                }
+            }
+        } else {
+            this.stripes = new AtomicLongArray[stripes];
+            for (int i = 0; i < this.stripes.length; i++) {
+                this.stripes[i] = new AtomicLongArray(DEPTH * WIDTH * COUNTERS);
+            }
+        }
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    long interval() {
+        return this.interval;
+    }
+
+    long startMillis() {
+        return this.startMillis;
+    }
+
+    long totalLines() {
+        return this.totalLines.sum();
+    }
+
+    void record(String logName, String pattern, boolean isSuppressed, int bytes) {
+        long key = key(logName, pattern);
+        AtomicLongArray stripe = this.stripes[(int) Thread.currentThread().getId() & (this.stripes.length - 1)];
+        long stripeEstimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int cell = cell(key, row) * COUNTERS;
+            stripeEstimate = Math.min(stripeEstimate, stripe.incrementAndGet(cell + LINES));
+            if (isSuppressed) {
+                stripe.incrementAndGet(cell + SUPPRESSED_LINES);
+            } else if (bytes > 0) {
+                stripe.addAndGet(cell + BYTES, bytes);
+            }
+        }
+        this.totalLines.increment();
+
+        // a key heavier than the threshold has more than its share of it in at least one stripe
+        if (stripeEstimate * this.stripes.length > this.admissionThreshold && indexOf(this.candidates, key, logName, pattern) < 0) {
+            admit(key, logName, pattern);
+        }
+    }
+
+    private void admit(long key, String logName, String pattern) {
+        this.candidatesLock.lock();
+        try {
+            Candidate[] candidates = this.candidates;
+            if (indexOf(candidates, key, logName, pattern) >= 0) {
+                return;
+            }
+            long estimate = estimate(LINES, key);
+
+            if (candidates.length < this.size) {
+                candidates = Arrays.copyOf(candidates, candidates.length + 1);
+                candidates[candidates.length - 1] = new Candidate(key, logName, pattern);
+            } else {
+                int lightest = lightest(candidates);
+                if (estimate > estimate(LINES, candidates[lightest].key)) {
+                    candidates = candidates.clone();
+                    candidates[lightest] = new Candidate(key, logName, pattern);
+                }
+            }
+            this.candidates = candidates;
+            this.admissionThreshold = candidates.length < this.size ? 0 : estimate(LINES, candidates[lightest(candidates)].key);
+        } finally {
+            this.candidatesLock.unlock();
+        }
+    }
+
+    /**
+     * @return the candidates, heaviest first
+     */
+    List<HeavyHitter> top() {
+        List<HeavyHitter> top = new ArrayList<HeavyHitter>();
+        for (Candidate candidate : this.candidates) {
+            top.add(new HeavyHitter(candidate.logName,
+                                    candidate.pattern,
+                                    estimate(LINES, candidate.key),
+                                    estimate(SUPPRESSED_LINES, candidate.key),
+                                    estimate(BYTES, candidate.key)));
+        }
+        Collections.sort(top, new Comparator<HeavyHitter>() {
+            @Override
+            public int compare(HeavyHitter a, HeavyHitter b) {
+                return Long.compare(b.getLines(), a.getLines());
+            }
+        });
+        return top;
+    }
+
+    /**
+     * @return true for exactly one caller once the interval has passed, unless periodic reports are off
+     */
+    boolean claimReport(long now) {
+        long next = this.nextReportMillis.get();
+        return this.interval > 0 && now >= next && this.nextReportMillis.compareAndSet(next, Long.MAX_VALUE);
+    }
+
+    private int lightest(Candidate[] candidates) {
+        int lightest = 0;
+        long lightestEstimate = Long.MAX_VALUE;
+        for (int i = 0; i < candidates.length; i++) {
+            long estimate = estimate(LINES, candidates[i].key);
+            if (estimate < lightestEstimate) {
+                lightest = i;
+                lightestEstimate = estimate;
+            }
+        }
+        return lightest;
+    }
+
+    private static int indexOf(Candidate[] candidates, long key, String logName, String pattern) {
+        for (int i = 0; i < candidates.length; i++) {
+            if (candidates[i].is(key, logName, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // sums the given counter of the key over all stripes
+    private long estimate(int counter, long key) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int cell = cell(key, row) * COUNTERS + counter;
+            long count = 0;
+            for (AtomicLongArray stripe : this.stripes) {
+                count += stripe.get(cell);
+            }
+            estimate = Math.min(estimate, count);
+        }
+        return estimate;
+    }
+
+    // uses the hash codes cached by the Strings, so that no key object is created per line
+    private static long key(String logName, String pattern) {
+        return ((long) (logName != null ? logName.hashCode() : 0) << 32) | ((pattern != null ? pattern.hashCode() : 0) & 0xFFFFFFFFL);
+    }
+
+    // an independent hash per row, mixed like SplitMix64
+    private static int cell(long key, int row) {
+        long hash = key + (row + 1) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        hash = hash ^ (hash >>> 31);
+        return row * WIDTH + (int) (hash & (WIDTH - 1));
+    }
+}
@@ -0,0 +1,145 @@
+package kc.utils.minilogger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative long values. Values are counted in log-linear buckets: every power of two is
+ * split into 32 linear sub-buckets, so that reported percentiles are within about 3% of the recorded values, while the
+ * whole long range fits into less than 2000 buckets. Min and max are tracked exactly.
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     *
+     * @param value the value to record
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.buckets.incrementAndGet(bucketOf(value));
+        this.count.incrementAndGet();
+
+        for (long current = this.min.get(); value < current; current = this.min.get()) {
+            if (this.min.compareAndSet(current, value)) {
+                break;
+            }
+        }
+        for (long current = this.max.get(); value > current; current = this.max.get()) {
+            if (this.max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return the number of values recorded so far
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * @return the smallest value recorded so far, or zero if no value has been recorded yet
+     */
+    public long getMin() {
+        return getCount() == 0 ? 0 : this.min.get();
+    }
+
+    /**
+     * @return the largest value recorded so far, or zero if no value has been recorded yet
+     */
+    public long getMax() {
+        return getCount() == 0 ? 0 : this.max.get();
+    }
+
+    /**
+     * Estimates the value below which the given percentage of recorded values fall. The estimate is clamped to the
+     * exact min and max.
+     *
+     * @param percentile the percentile to look up, between 0 and 100
+     * @return the estimated value at that percentile, or zero if no value has been recorded yet
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = this.buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total));
+        if (rank >= total) {
+            return getMax();
+        }
+        long seen = 0;
+        int bucket = 0;
+        for (; bucket < BUCKET_COUNT - 1; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                break;
+            }
+        }
+
+        long value = bucketMidpoint(bucket);
+        return Math.max(getMin(), Math.min(getMax(), value));
+    }
+
+    /**
+     * @return a copy of this histogram, unaffected by values recorded after this call
+     */
+    public Histogram copy() {
+        Histogram copy = new Histogram();
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy.buckets.set(i, this.buckets.get(i));
+        }
+        copy.count.set(this.count.get());
+        copy.min.set(this.min.get());
+        copy.max.set(this.max.get());
+        return copy;
+    }
+
+    /**
+     * @return a one-line summary with count, min, p50, p99, p999, and max
+     */
+    @Override
+    public String toString() {
+        return "count=" + getCount() +
+               " min=" + getMin() +
+               " p50=" + getValueAtPercentile(50) +
+               " p99=" + getValueAtPercentile(99) +
+               " p999=" + getValueAtPercentile(99.9) +
+               " max=" + getMax();
+    }
+
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    static long bucketMidpoint(int bucket) {
+        if (bucket < 2 * SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKET_COUNT - 1;
+        long lowest = (long) (bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+        return lowest + ((1L << shift) - 1) / 2;
+    }
+}
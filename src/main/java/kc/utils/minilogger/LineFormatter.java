@@ -0,0 +1,256 @@
+package kc.utils.minilogger;
+
+import java.math.BigInteger;
+import java.text.DecimalFormatSymbols;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Formattable;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Formats message patterns like String.format does, but appends the most common conversions directly to the line
+ * buffer: plain %s and %d, as well as %n and %%, are appended without boxing primitive parameters or creating
+ * intermediate Strings. Conversions with flags, width, or precision, and all other conversions, are formatted one by
+ * one with String.format. Patterns using explicit argument indices are handed to String.format as a whole.
+ *
+ * Optionally, the length of every argument and of the whole line is limited. Arguments and lines cut off are followed
+ * by TRUNCATION_MARKER. For plain %s, CharSequences as well as Collections and Maps with their default toString are
+ * rendered element by element, and rendering stops as soon as the limit is hit, so that a huge argument costs no
+ * more than its limit. Other arguments are cut off after their toString, which bounds the line, but not the cost of
+ * toString itself.
+ */
+final class LineFormatter {
+
+    static final String TRUNCATION_MARKER = "...[truncated]";
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    // whether instances of a class render like AbstractCollection or AbstractMap, i.e. can be rendered incrementally
+    private static final ClassValue<Boolean> HAS_DEFAULT_TO_STRING = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                Class<?> declaringClass = type.getMethod("toString").getDeclaringClass();
+                return declaringClass == AbstractCollection.class || declaringClass == AbstractMap.class;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    // String.format localizes digits, so %d is only appended directly where that makes no difference
+    private static final boolean HAS_ASCII_DIGITS =
+            DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT)).getZeroDigit() == '0';
+
+    private LineFormatter() {
+    }
+
+    static void format(StringBuilder line, String pattern, Args args) {
+        format(line, pattern, args, 0, 0);
+    }
+
+    /**
+     * Appends the formatted pattern to the line, limiting each argument to maxArgLength characters and the whole line,
+     * including what has been in the buffer before, to maxLineLength characters, where zero means no limit. Whatever
+     * is cut off is replaced by TRUNCATION_MARKER, which is not counted against the limits.
+     */
+    static void format(StringBuilder line, String pattern, Args args, int maxArgLength, int maxLineLength) {
+        int lineLimit = maxLineLength > 0 ? maxLineLength : Integer.MAX_VALUE;
+        if (usesArgumentIndices(pattern)) {
+            line.append(String.format(pattern, args.toArray()));
+            cut(line, lineLimit);
+            return;
+        }
+
+        int argIndex = 0;
+        int length = pattern.length();
+        int i = 0;
+        while (i < length) {
+            if (line.length() >= lineLimit) {
+                // there is more to come, so the line is cut even if it is exactly at the limit
+                if (!endsWithMarker(line)) {
+                    line.setLength(lineLimit);
+                    line.append(TRUNCATION_MARKER);
+                }
+                return;
+            }
+
+            char c = pattern.charAt(i);
+            if (c != '%') {
+                line.append(c);
+                i++;
+                continue;
+            }
+
+            // find the conversion, which is the first letter or % after flags, width, and precision
+            int specEnd = i + 1;
+            while (specEnd < length && !isConversion(pattern.charAt(specEnd))) {
+                specEnd++;
+            }
+            char conversion = specEnd < length ? pattern.charAt(specEnd) : 0;
+            if (conversion == 't' || conversion == 'T') {
+                specEnd++;
+            }
+            if (specEnd >= length) {
+                // let String.format report the broken pattern
+                line.append(String.format(pattern.substring(i), args.toArray()));
+                return;
+            }
+            boolean isPlain = specEnd == i + 1;
+
+            if (conversion == '%' && isPlain) {
+                line.append('%');
+            } else if (conversion == 'n' && isPlain) {
+                line.append(LINE_SEPARATOR);
+            } else if (conversion == '%' || conversion == 'n') {
+                // these never take an argument
+                line.append(String.format(pattern.substring(i, specEnd + 1)));
+            } else if (argIndex >= args.count()) {
+                // let String.format report the missing argument
+                line.append(String.format(pattern, args.toArray()));
+                return;
+            } else {
+                int argLimit = maxArgLength > 0 ? (int) Math.min((long) line.length() + maxArgLength, lineLimit) : lineLimit;
+                boolean isCut;
+                if (isPlain && conversion == 's' && argLimit < Integer.MAX_VALUE && !args.isPrimitive(argIndex) && !(args.get(argIndex) instanceof Formattable)) {
+                    isCut = appendBounded(line, args.get(argIndex), argLimit, 0);
+                } else {
+                    if (!isPlain || !appendPlain(line, conversion, args, argIndex)) {
+                        line.append(String.format(pattern.substring(i, specEnd + 1), args.get(argIndex)));
+                    }
+                    isCut = line.length() > argLimit;
+                }
+                argIndex++;
+                if (isCut) {
+                    line.setLength(argLimit);
+                    line.append(TRUNCATION_MARKER);
+                    if (argLimit == lineLimit) {
+                        return;
+                    }
+                }
+            }
+            i = specEnd + 1;
+        }
+        cut(line, lineLimit);
+    }
+
+    // cuts the line off at the limit, marking it if it has not been marked already
+    private static void cut(StringBuilder line, int limit) {
+        if (line.length() > limit && !endsWithMarker(line)) {
+            line.setLength(limit);
+            line.append(TRUNCATION_MARKER);
+        }
+    }
+
+    private static boolean endsWithMarker(StringBuilder line) {
+        int start = line.length() - TRUNCATION_MARKER.length();
+        return start >= 0 && line.indexOf(TRUNCATION_MARKER, start) == start;
+    }
+
+    /**
+     * Appends the value like String.valueOf would, but stops as soon as the line reaches the limit.
+     *
+     * @return true if the value has been cut off, the line is then exactly as long as the limit
+     */
+    private static boolean appendBounded(StringBuilder line, Object value, int limit, int depth) {
+        if (value instanceof CharSequence) {
+            CharSequence chars = (CharSequence) value;
+            int end = Math.min(chars.length(), limit - line.length());
+            line.append(chars, 0, end);
+            return end < chars.length();
+        } else if (value instanceof Collection && depth < 32 && HAS_DEFAULT_TO_STRING.get(value.getClass())) {
+            line.append('[');
+            boolean isFirst = true;
+            for (Object element : (Collection<?>) value) {
+                if (!isFirst) {
+                    line.append(", ");
+                }
+                isFirst = false;
+                if (line.length() >= limit || appendBounded(line, element == value ? "(this Collection)" : element, limit, depth + 1)) {
+                    line.setLength(Math.min(line.length(), limit));
+                    return true;
+                }
+            }
+            line.append(']');
+        } else if (value instanceof Map && depth < 32 && HAS_DEFAULT_TO_STRING.get(value.getClass())) {
+            line.append('{');
+            boolean isFirst = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!isFirst) {
+                    line.append(", ");
+                }
+                isFirst = false;
+                if (line.length() >= limit || appendBounded(line, entry.getKey() == value ? "(this Map)" : entry.getKey(), limit, depth + 1)) {
+                    line.setLength(Math.min(line.length(), limit));
+                    return true;
+                }
+                line.append('=');
+                if (line.length() >= limit || appendBounded(line, entry.getValue() == value ? "(this Map)" : entry.getValue(), limit, depth + 1)) {
+                    line.setLength(Math.min(line.length(), limit));
+                    return true;
+                }
+            }
+            line.append('}');
+        } else {
+            return appendBounded(line, String.valueOf(value), limit, depth);
+        }
+
+        if (line.length() > limit) {
+            line.setLength(limit);
+            return true;
+        }
+        return false;
+    }
+
+    // appends a %s or %d conversion without flags, width, or precision, returns false if this is not possible
+    private static boolean appendPlain(StringBuilder line, char conversion, Args args, int index) {
+        if (conversion == 's') {
+            if (args.isPrimitive(index)) {
+                args.appendPrimitive(line, index);
+            } else {
+                Object value = args.get(index);
+                if (value instanceof Formattable) {
+                    return false;
+                }
+                line.append(value);
+            }
+            return true;
+        } else if (conversion == 'd' && HAS_ASCII_DIGITS) {
+            if (args.isIntegral(index)) {
+                line.append(args.getLong(index));
+                return true;
+            } else if (args.isPrimitive(index)) {
+                return false;
+            }
+            Object value = args.get(index);
+            if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                line.append(((Number) value).longValue());
+                return true;
+            } else if (value instanceof BigInteger) {
+                line.append(value);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isConversion(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '%';
+    }
+
+    private static boolean usesArgumentIndices(String pattern) {
+        for (int i = pattern.indexOf('%'); i >= 0; i = pattern.indexOf('%', i + 1)) {
+            for (int j = i + 1; j < pattern.length() && !isConversion(pattern.charAt(j)); j++) {
+                if (pattern.charAt(j) == '$' || pattern.charAt(j) == '<') {
+                    return true;
+                }
+            }
+            if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '%') {
+                i++;
+            }
+        }
+        return false;
+    }
+}
@@ -6,6 +6,14 @@ package kc.utils.minilogger;
  * new line however.
  *
  * Get instances from a MiniLogger, or it's default root instance MiniLogger.root
+ *
+ * Besides the varargs methods, there are overloads for up to four parameters and for a single primitive parameter.
+ * These neither allocate a parameter array nor box primitives, so that suppressed debug and silenced progress
+ * statements do not allocate at all. Several primitive parameters are boxed, as an overload for them would widen
+ * some of their types, e.g. an int next to a double, and format them unlike their wrappers.
+ *
+ * Instead of a debug line per event, values such as latencies can be recorded via record and timer. They are
+ * aggregated per metric name and summarized in one info line per interval, see MiniLogger.flushMetrics.
  */
 public class Log {
 
@@ -27,6 +35,102 @@ public class Log {
         this.miniLogger.toFileAndConsole(this.name, false, pattern, params);
     }
 
+    /**
+     * Same as info(String, Object...) for a pattern without parameters, but without allocating an empty array.
+     */
+    public void info(String pattern) {
+        this.miniLogger.toFileAndConsole(this.name, false, null, pattern, Args.of());
+    }
+
+    /**
+     * Same as info(String, Object...) for one parameter, but without allocating an array.
+     */
+    public void info(String pattern, Object a) {
+        this.miniLogger.toFileAndConsole(this.name, false, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as info(String, Object...) for two parameters, but without allocating an array.
+     */
+    public void info(String pattern, Object a, Object b) {
+        this.miniLogger.toFileAndConsole(this.name, false, null, pattern, Args.of(a, b));
+    }
+
+    /**
+     * Same as info(String, Object...) for three parameters, but without allocating an array.
+     */
+    public void info(String pattern, Object a, Object b, Object c) {
+        this.miniLogger.toFileAndConsole(this.name, false, null, pattern, Args.of(a, b, c));
+    }
+
+    /**
+     * Same as info(String, Object...) for four parameters, but without allocating an array.
+     */
+    public void info(String pattern, Object a, Object b, Object c, Object d) {
+        this.miniLogger.toFileAndConsole(this.name, false, null, pattern, Args.of(a, b, c, d));
+    }
+
+    /**
+     * Same as info(String, Object...) for one int parameter, but without boxing it or allocating an array.
+     */
+    public void info(String pattern, int a) {
+        this.miniLogger.toFileAndConsole(this.name, false, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as info(String, Object...) for one byte parameter, but without boxing it or allocating an array.
+     */
+    public void info(String pattern, byte a) {
+        this.miniLogger.toFileAndConsole(this.name, false, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as info(String, Object...) for one short parameter, but without boxing it or allocating an array.
+     */
+    public void info(String pattern, short a) {
+        this.miniLogger.toFileAndConsole(this.name, false, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as info(String, Object...) for one char parameter, but without boxing it or allocating an array.
+     */
+    public void info(String pattern, char a) {
+        this.miniLogger.toFileAndConsole(this.name, false, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as info(String, Object...) for one long parameter, but without boxing it or allocating an array.
+     */
+    public void info(String pattern, long a) {
+        this.miniLogger.toFileAndConsole(this.name, false, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as info(String, Object...) for one float parameter, but without boxing it or allocating an array.
+     */
+    public void info(String pattern, float a) {
+        this.miniLogger.toFileAndConsole(this.name, false, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as info(String, Object...) for one double parameter, but without boxing it or allocating an array.
+     */
+    public void info(String pattern, double a) {
+        this.miniLogger.toFileAndConsole(this.name, false, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Logs a message followed by the given Throwable and its stack trace to the file and the console streams, if
+     * these are configured. A stack trace identical to one logged before is replaced by a reference to it.
+     *
+     * @param throwable the Throwable to log with its stack trace
+     * @param pattern the pattern String that formats params, if any
+     * @param params optional array of paramters that will be serialized using the specified pattern.
+     */
+    public void info(Throwable throwable, String pattern, Object...params) {
+        this.miniLogger.toFileAndConsole(this.name, false, throwable, pattern, params);
+    }
+
     /**
      * Logs a message to the file and the console streams, if these are configured, iff this Logs name is not
      * muted and either this Logs name is focused or debug statements are enabled.
@@ -38,6 +142,103 @@ public class Log {
         this.miniLogger.toFileAndConsole(this.name, true, pattern, params);
     }
 
+    /**
+     * Same as debug(String, Object...) for a pattern without parameters, but without allocating an empty array.
+     */
+    public void debug(String pattern) {
+        this.miniLogger.toFileAndConsole(this.name, true, null, pattern, Args.of());
+    }
+
+    /**
+     * Same as debug(String, Object...) for one parameter, but without allocating an array.
+     */
+    public void debug(String pattern, Object a) {
+        this.miniLogger.toFileAndConsole(this.name, true, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as debug(String, Object...) for two parameters, but without allocating an array.
+     */
+    public void debug(String pattern, Object a, Object b) {
+        this.miniLogger.toFileAndConsole(this.name, true, null, pattern, Args.of(a, b));
+    }
+
+    /**
+     * Same as debug(String, Object...) for three parameters, but without allocating an array.
+     */
+    public void debug(String pattern, Object a, Object b, Object c) {
+        this.miniLogger.toFileAndConsole(this.name, true, null, pattern, Args.of(a, b, c));
+    }
+
+    /**
+     * Same as debug(String, Object...) for four parameters, but without allocating an array.
+     */
+    public void debug(String pattern, Object a, Object b, Object c, Object d) {
+        this.miniLogger.toFileAndConsole(this.name, true, null, pattern, Args.of(a, b, c, d));
+    }
+
+    /**
+     * Same as debug(String, Object...) for one int parameter, but without boxing it or allocating an array.
+     */
+    public void debug(String pattern, int a) {
+        this.miniLogger.toFileAndConsole(this.name, true, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as debug(String, Object...) for one byte parameter, but without boxing it or allocating an array.
+     */
+    public void debug(String pattern, byte a) {
+        this.miniLogger.toFileAndConsole(this.name, true, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as debug(String, Object...) for one short parameter, but without boxing it or allocating an array.
+     */
+    public void debug(String pattern, short a) {
+        this.miniLogger.toFileAndConsole(this.name, true, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as debug(String, Object...) for one char parameter, but without boxing it or allocating an array.
+     */
+    public void debug(String pattern, char a) {
+        this.miniLogger.toFileAndConsole(this.name, true, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as debug(String, Object...) for one long parameter, but without boxing it or allocating an array.
+     */
+    public void debug(String pattern, long a) {
+        this.miniLogger.toFileAndConsole(this.name, true, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as debug(String, Object...) for one float parameter, but without boxing it or allocating an array.
+     */
+    public void debug(String pattern, float a) {
+        this.miniLogger.toFileAndConsole(this.name, true, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as debug(String, Object...) for one double parameter, but without boxing it or allocating an array.
+     */
+    public void debug(String pattern, double a) {
+        this.miniLogger.toFileAndConsole(this.name, true, null, pattern, Args.of(a));
+    }
+
+    /**
+     * Logs a message followed by the given Throwable and its stack trace to the file and the console streams, if
+     * these are configured, iff this Logs name is not muted and either this Logs name is focused or debug statements
+     * are enabled. A stack trace identical to one logged before is replaced by a reference to it.
+     *
+     * @param throwable the Throwable to log with its stack trace
+     * @param pattern the pattern String that formats params, if any
+     * @param params optional array of paramters that will be serialized using the specified pattern.
+     */
+    public void debug(Throwable throwable, String pattern, Object...params) {
+        this.miniLogger.toFileAndConsole(this.name, true, throwable, pattern, params);
+    }
+
     /**
      * Logs a message to the console stream, if it is configured. The next call to this method will overwrite the
      * previous progress line on the console, thus allowing to display the progress of a long-lasting task, in, e.g.
@@ -50,4 +251,110 @@ public class Log {
     public void progress(String pattern, Object... params) {
         this.miniLogger.toConsoleNoNewline(this.name, pattern, params);
     }
+
+    /**
+     * Same as progress(String, Object...) for a pattern without parameters, but without allocating an empty array.
+     */
+    public void progress(String pattern) {
+        this.miniLogger.toConsoleNoNewline(this.name, pattern, Args.of());
+    }
+
+    /**
+     * Same as progress(String, Object...) for one parameter, but without allocating an array.
+     */
+    public void progress(String pattern, Object a) {
+        this.miniLogger.toConsoleNoNewline(this.name, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as progress(String, Object...) for two parameters, but without allocating an array.
+     */
+    public void progress(String pattern, Object a, Object b) {
+        this.miniLogger.toConsoleNoNewline(this.name, pattern, Args.of(a, b));
+    }
+
+    /**
+     * Same as progress(String, Object...) for three parameters, but without allocating an array.
+     */
+    public void progress(String pattern, Object a, Object b, Object c) {
+        this.miniLogger.toConsoleNoNewline(this.name, pattern, Args.of(a, b, c));
+    }
+
+    /**
+     * Same as progress(String, Object...) for four parameters, but without allocating an array.
+     */
+    public void progress(String pattern, Object a, Object b, Object c, Object d) {
+        this.miniLogger.toConsoleNoNewline(this.name, pattern, Args.of(a, b, c, d));
+    }
+
+    /**
+     * Same as progress(String, Object...) for one int parameter, but without boxing it or allocating an array.
+     */
+    public void progress(String pattern, int a) {
+        this.miniLogger.toConsoleNoNewline(this.name, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as progress(String, Object...) for one byte parameter, but without boxing it or allocating an array.
+     */
+    public void progress(String pattern, byte a) {
+        this.miniLogger.toConsoleNoNewline(this.name, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as progress(String, Object...) for one short parameter, but without boxing it or allocating an array.
+     */
+    public void progress(String pattern, short a) {
+        this.miniLogger.toConsoleNoNewline(this.name, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as progress(String, Object...) for one char parameter, but without boxing it or allocating an array.
+     */
+    public void progress(String pattern, char a) {
+        this.miniLogger.toConsoleNoNewline(this.name, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as progress(String, Object...) for one long parameter, but without boxing it or allocating an array.
+     */
+    public void progress(String pattern, long a) {
+        this.miniLogger.toConsoleNoNewline(this.name, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as progress(String, Object...) for one float parameter, but without boxing it or allocating an array.
+     */
+    public void progress(String pattern, float a) {
+        this.miniLogger.toConsoleNoNewline(this.name, pattern, Args.of(a));
+    }
+
+    /**
+     * Same as progress(String, Object...) for one double parameter, but without boxing it or allocating an array.
+     */
+    public void progress(String pattern, double a) {
+        this.miniLogger.toConsoleNoNewline(this.name, pattern, Args.of(a));
+    }
+
+    /**
+     * Records a value to the metric with the given name. Values are not logged one by one, but aggregated into a
+     * histogram that is summarized with count, min, p50, p99, p999, and max in one info line per metrics interval.
+     *
+     * @param metricName the name of the metric, unique within this Logs name
+     * @param value the value to record, negative values are recorded as zero
+     */
+    public void record(String metricName, long value) {
+        this.miniLogger.record(this.name, metricName, value);
+    }
+
+    /**
+     * Starts a Timer that records the time until it is closed, in microseconds, to the metric with the given name,
+     * e.g. try (Timer timer = log.timer("request")) { ... }
+     *
+     * @param metricName the name of the metric, unique within this Logs name
+     * @return the started Timer
+     */
+    public Timer timer(String metricName) {
+        return new Timer(this.miniLogger, this.name, metricName);
+    }
 }
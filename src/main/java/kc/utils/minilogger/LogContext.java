@@ -0,0 +1,134 @@
+package kc.utils.minilogger;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Context fields, e.g. a request id or a tenant, that are added to every line a thread logs while they are in scope,
+ * see MiniLogger.putContext. The context of a thread is an immutable snapshot, a linked list of fields from the
+ * most recently put one to the oldest one, so that putting a field allocates a single node, capturing the context
+ * copies a single reference, and a captured context never changes. The fields of a snapshot are rendered once, when
+ * the first line is written with it, and the result is kept for all further lines.
+ *
+ * The context is bound to a thread, and it is not inherited by threads or tasks started from it. Use
+ * MiniLogger.wrap to carry it over to a task run by an executor or a virtual thread.
+ *
+ * The snapshots returned by putContext and removeContext are scopes as well; closing one restores the context the
+ * field has been put or removed in. Meant to be used with try-with-resources.
+ */
+public final class LogContext implements AutoCloseable {
+
+    private static final ThreadLocal<LogContext> CURRENT = new ThreadLocal<LogContext>();
+
+    private final LogContext parent;
+    private final String key;
+    // null if the field has been removed
+    private final Object value;
+    private String rendered = null;
+
+    private LogContext(LogContext parent, String key, Object value) {
+        this.parent = parent;
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * @return the context of the calling thread, or null if it has none
+     */
+    static LogContext current() {
+        return CURRENT.get();
+    }
+
+    static LogContext push(String key, Object value) {
+        if (key == null) {
+            throw new IllegalArgumentException("Unexpected context key null, expected the name of a field");
+        }
+        LogContext context = new LogContext(CURRENT.get(), key, value);
+        CURRENT.set(context);
+        return context;
+    }
+
+    /**
+     * Restores the context of the calling thread to the one this field has been put or removed in.
+     */
+    @Override
+    public void close() {
+        set(this.parent);
+    }
+
+    private static void set(LogContext context) {
+        if (context != null) {
+            CURRENT.set(context);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    static Runnable wrap(final Runnable runnable) {
+        final LogContext captured = CURRENT.get();
+        return new Runnable() {
+            @Override
+            public void run() {
+                LogContext previous = CURRENT.get();
+                set(captured);
+                try {
+                    runnable.run();
+                } finally {
+                    set(previous);
+                }
+            }
+        };
+    }
+
+    static <T> Callable<T> wrap(final Callable<T> callable) {
+        final LogContext captured = CURRENT.get();
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                LogContext previous = CURRENT.get();
+                set(captured);
+                try {
+                    return callable.call();
+                } finally {
+                    set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * Appends the fields as key=value pairs separated by blanks, oldest first, skipping removed and overwritten ones.
+     *
+     * @return false if there are no fields to append
+     */
+    boolean appendTo(StringBuilder line) {
+        // a benign race, all threads render the same String
+        String rendered = this.rendered;
+        if (rendered == null) {
+            StringBuilder builder = new StringBuilder();
+            appendFields(builder, this);
+            rendered = builder.toString();
+            this.rendered = rendered;
+        }
+        line.append(rendered);
+        return rendered.length() > 0;
+    }
+
+    // appends the parents first, to keep the order the fields have been put in
+    private void appendFields(StringBuilder builder, LogContext newest) {
+        if (this.parent != null) {
+            this.parent.appendFields(builder, newest);
+        }
+        if (this.value == null) {
+            return;
+        }
+        for (LogContext newer = newest; newer != this; newer = newer.parent) {
+            if (newer.key.equals(this.key)) {
+                return;
+            }
+        }
+        if (builder.length() > 0) {
+            builder.append(' ');
+        }
+        builder.append(this.key).append('=').append(this.value);
+    }
+}
@@ -0,0 +1,75 @@
+package kc.utils.minilogger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The sidecar index of a log file as written by LogIndexWriter, loaded into memory for lookups.
+ */
+class LogIndex {
+
+    final long[] millis;
+    final long[] offsets;
+
+    private LogIndex(long[] millis, long[] offsets) {
+        this.millis = millis;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Loads the index of the given log file.
+     *
+     * @param logFile the log file to load the index of
+     * @return the index, or null if the log file has no index or it has no entries
+     * @throws IOException if reading the index fails
+     */
+    static LogIndex load(File logFile) throws IOException {
+        File indexFile = new File(logFile.getPath() + LogIndexWriter.SUFFIX);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        int entries = (int) (indexFile.length() / LogIndexWriter.ENTRY_LENGTH);
+        if (entries == 0) {
+            return null;
+        }
+        long[] millis = new long[entries];
+        long[] offsets = new long[entries];
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            for (int i = 0; i < entries; i++) {
+                millis[i] = in.readLong();
+                offsets[i] = in.readLong();
+            }
+        } catch (EOFException e) {
+            // the index is being written to, entries are read up to the file size seen above
+        } finally {
+            in.close();
+        }
+        return new LogIndex(millis, offsets);
+    }
+
+    /**
+     * @return the timestamp of the first indexed line
+     */
+    long firstMillis() {
+        return this.millis[0];
+    }
+
+    /**
+     * Looks up the timestamp of the entry covering the line at the given offset. All lines between two entries share
+     * the second of the first entry.
+     *
+     * @param offset the offset of a line in the log file
+     * @return the timestamp of the covering entry, or of the first entry for offsets before it
+     */
+    long millisAt(long offset) {
+        int i = Arrays.binarySearch(this.offsets, offset);
+        return this.millis[i >= 0 ? i : Math.max(0, -i - 2)];
+    }
+}
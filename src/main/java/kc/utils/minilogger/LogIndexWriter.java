@@ -0,0 +1,72 @@
+package kc.utils.minilogger;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes the sidecar index of a rolled log file. The index is a sequence of 16 byte entries, each holding the
+ * timestamp in milliseconds and the byte offset of a line in the log file, both as big-endian longs. An entry is
+ * written for the first line of every second and for every indexInterval-th line within a second, so that all lines
+ * between two entries fall into the same second.
+ */
+class LogIndexWriter {
+
+    static final String SUFFIX = ".idx";
+    static final int ENTRY_LENGTH = 16;
+
+    private final String fileName;
+    private final FileOutputStream out;
+    private final int indexInterval;
+    private final byte[] entry = new byte[ENTRY_LENGTH];
+
+    private long lastSecond = Long.MIN_VALUE;
+    private int linesSinceEntry = 0;
+
+    LogIndexWriter(String logFileName, int indexInterval) {
+        this.fileName = logFileName + SUFFIX;
+        this.indexInterval = indexInterval;
+        try {
+            this.out = new FileOutputStream(this.fileName);
+        } catch (FileNotFoundException e) {
+            throw new RuntimeException("cannot index to " + this.fileName + "!", e);
+        }
+    }
+
+    /**
+     * Notes a line about to be written to the log file, writing an index entry if needed.
+     *
+     * @param millis the timestamp of the line
+     * @param offset the offset in bytes of the line in the log file
+     */
+    void lineAt(long millis, long offset) {
+        long second = Math.floorDiv(millis, 1000);
+        if (second != this.lastSecond || this.linesSinceEntry >= this.indexInterval) {
+            putLong(0, millis);
+            putLong(8, offset);
+            try {
+                this.out.write(this.entry);
+            } catch (IOException e) {
+                throw new RuntimeException("cannot index to " + this.fileName + "!", e);
+            }
+            this.lastSecond = second;
+            this.linesSinceEntry = 0;
+        }
+        this.linesSinceEntry++;
+    }
+
+    void close() {
+        try {
+            this.out.close();
+        } catch (IOException e) {
+            // ignore this, the index is not written to anymore
+        }
+    }
+
+    private void putLong(int position, long value) {
+        for (int i = 7; i >= 0; i--) {
+            this.entry[position + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package kc.utils.minilogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reads the lines logged within a time range from the files a file name pattern has rolled to, using the sidecar
+ * indexes MiniLogger writes if an index interval is configured. Instead of scanning the files, the reader looks up
+ * the byte ranges covering the time range in the indexes and copies just these. Log files without an index are
+ * skipped.
+ *
+ * Ranges have the resolution of a second: all lines logged from the start of the second of the from timestamp to
+ * the end of the second of the to timestamp are returned.
+ */
+public class LogRangeReader {
+
+    private final String fileNamePattern;
+
+    /**
+     * Creates a reader for the files the given pattern has rolled to.
+     *
+     * @param fileNamePattern the file name pattern used for logging, e.g. the file parameter of minilogger.conf
+     */
+    public LogRangeReader(String fileNamePattern) {
+        this.fileNamePattern = fileNamePattern;
+    }
+
+    /**
+     * Copies the lines logged within the given time range to the given stream, in the order of the log files.
+     *
+     * @param fromMillis the start of the time range, inclusive
+     * @param toMillis the end of the time range, inclusive
+     * @param out the stream to copy lines to
+     * @return the number of bytes copied
+     * @throws IOException if reading the log files or writing to the stream fails
+     */
+    public long copyRange(long fromMillis, long toMillis, OutputStream out) throws IOException {
+        long fromSecond = Math.floorDiv(fromMillis, 1000);
+        long toSecond = Math.floorDiv(toMillis, 1000);
+
+        List<IndexedFile> indexedFiles = new ArrayList<IndexedFile>();
+        for (File file : RolledFiles.expand(this.fileNamePattern)) {
+            LogIndex index = LogIndex.load(file);
+            if (index != null) {
+                indexedFiles.add(new IndexedFile(file, index));
+            }
+        }
+        Collections.sort(indexedFiles, new Comparator<IndexedFile>() {
+            @Override
+            public int compare(IndexedFile a, IndexedFile b) {
+                return Long.compare(a.index.firstMillis(), b.index.firstMillis());
+            }
+        });
+
+        WritableByteChannel target = Channels.newChannel(out);
+        long copied = 0;
+        for (IndexedFile indexedFile : indexedFiles) {
+            copied += indexedFile.copyRange(fromSecond, toSecond, target);
+        }
+        out.flush();
+        return copied;
+    }
+
+    private static class IndexedFile {
+        private final File file;
+        private final LogIndex index;
+
+        IndexedFile(File file, LogIndex index) {
+            this.file = file;
+            this.index = index;
+        }
+
+        long copyRange(long fromSecond, long toSecond, WritableByteChannel target) throws IOException {
+            RandomAccessFile in = new RandomAccessFile(this.file, "r");
+            try {
+                FileChannel channel = in.getChannel();
+                long length = channel.size();
+                long copied = 0;
+
+                // lines between two entries share the second of the first entry, coalesce adjacent matching intervals
+                long start = -1;
+                long[] millis = this.index.millis;
+                long[] offsets = this.index.offsets;
+                for (int i = 0; i <= millis.length; i++) {
+                    long offset = i < offsets.length ? Math.min(offsets[i], length) : length;
+                    boolean matches = i < millis.length &&
+                                      Math.floorDiv(millis[i], 1000) >= fromSecond &&
+                                      Math.floorDiv(millis[i], 1000) <= toSecond;
+                    if (matches && start < 0) {
+                        start = offset;
+                    } else if (!matches && start >= 0) {
+                        copied += transfer(channel, start, offset, target);
+                        start = -1;
+                    }
+                }
+                return copied;
+            } finally {
+                in.close();
+            }
+        }
+
+        private static long transfer(FileChannel channel, long start, long end, WritableByteChannel target) throws IOException {
+            long position = start;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+            return end - start;
+        }
+    }
+
+    /**
+     * Prints the lines logged within a time range to stdout.
+     *
+     * Usage: LogRangeReader fileNamePattern from to, where from and to are local date times such as
+     * 2017-08-28T14:02:00
+     *
+     * @param args the file name pattern, the start, and the end of the time range
+     * @throws IOException if reading the log files fails
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("usage: LogRangeReader fileNamePattern from to, e.g. 'logs/log-%tF.txt' 2017-08-28T14:02:00 2017-08-28T14:05:00");
+            System.exit(1);
+        }
+
+        ZoneId zone = ZoneId.systemDefault();
+        long from = LocalDateTime.parse(args[1]).atZone(zone).toInstant().toEpochMilli();
+        long to = LocalDateTime.parse(args[2]).atZone(zone).toInstant().toEpochMilli();
+        new LogRangeReader(args[0]).copyRange(from, to, System.out);
+    }
+}
@@ -0,0 +1,615 @@
+package kc.utils.minilogger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
+
+/**
+ * Searches the files a file name pattern has rolled to for lines matching a literal, a regular expression, a Log
+ * name, and a time range. Files are memory-mapped and split into chunks on line boundaries, which are scanned in
+ * parallel on a ForkJoinPool; each chunk only maps itself and a bounded overhang for its last line. Lines are only
+ * decoded into Strings if a regular expression needs to be matched or once they matched. The matches of the files
+ * are merged into timestamp order as they are found, so that copyMatches streams them without holding them all.
+ *
+ * Time ranges and timestamp ordering rely on the sidecar indexes written if MiniLogger has an index interval
+ * configured, and have the resolution of a second. The lines of files without an index are placed in time by parsing
+ * their timestamps, given the time pattern they have been written with; lines without a timestamp, e.g. those of
+ * stack traces, belong to the line before. Without a time pattern, such files cannot be searched for a time range, and
+ * are ordered by their last modification.
+ */
+public class LogSearch {
+
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final long DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final long DEFAULT_MAX_OVERHANG = 1024 * 1024;
+    // the most bytes decoded at the start of a line to parse its timestamp from
+    private static final int MAX_TIMESTAMP_LENGTH = 128;
+
+    private final String fileNamePattern;
+    private byte[] literal = null;
+    private Pattern regex = null;
+    private byte[] logName = null;
+    private byte[] logNameAfterSeparator = null;
+    private long fromSecond = Long.MIN_VALUE;
+    private long toSecond = Long.MAX_VALUE;
+    private boolean hasTimeRange = false;
+    private TimestampParser timestampParser = null;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private long chunkSize = DEFAULT_CHUNK_SIZE;
+    private long maxOverhang = DEFAULT_MAX_OVERHANG;
+
+    /**
+     * Creates a search over the files the given pattern has rolled to, matching all lines until restricted further.
+     *
+     * @param fileNamePattern the file name pattern used for logging, e.g. the file parameter of minilogger.conf
+     */
+    public LogSearch(String fileNamePattern) {
+        this.fileNamePattern = fileNamePattern;
+    }
+
+    /**
+     * Restricts the search to lines containing the given text.
+     *
+     * @param literal the text to look for
+     * @return this LogSearch, for further configuration
+     */
+    public LogSearch withLiteral(String literal) {
+        this.literal = literal.getBytes(CHARSET);
+        return this;
+    }
+
+    /**
+     * Restricts the search to lines in which the given regular expression finds a match.
+     *
+     * @param regex the regular expression to look for
+     * @return this LogSearch, for further configuration
+     */
+    public LogSearch withRegex(String regex) {
+        this.regex = Pattern.compile(regex);
+        return this;
+    }
+
+    /**
+     * Restricts the search to lines logged by the Log with the given name. As Log names are padded or abbreviated in
+     * log files, the logNameLength and separator the files were written with need to be given too.
+     *
+     * @param name the name of the Log
+     * @param logNameLength the logNameLength the files were written with, must be positive
+     * @param separator the separator the files were written with
+     * @return this LogSearch, for further configuration
+     */
+    public LogSearch withLogName(String name, int logNameLength, String separator) {
+        if (logNameLength <= 0) {
+            throw new IllegalArgumentException("Log names are not written with a logNameLength of " + logNameLength);
+        }
+        String padded = String.format("%" + logNameLength + "." + logNameLength + "s", name) + separator;
+        this.logName = padded.getBytes(CHARSET);
+        this.logNameAfterSeparator = (separator + padded).getBytes(CHARSET);
+        return this;
+    }
+
+    /**
+     * Restricts the search to lines logged within the given time range, with the resolution of a second.
+     *
+     * @param fromMillis the start of the time range, inclusive
+     * @param toMillis the end of the time range, inclusive
+     * @return this LogSearch, for further configuration
+     */
+    public LogSearch withTimeRange(long fromMillis, long toMillis) {
+        this.fromSecond = Math.floorDiv(fromMillis, 1000);
+        this.toSecond = Math.floorDiv(toMillis, 1000);
+        this.hasTimeRange = true;
+        return this;
+    }
+
+    /**
+     * Specifies the time pattern the files were written with, to parse the timestamps of lines in files without an
+     * index. Needed to search files without an index for a time range.
+     *
+     * @param timePattern the timePattern the files were written with
+     * @return this LogSearch, for further configuration
+     * @throws IllegalArgumentException if timestamps written with the given time pattern cannot be parsed
+     */
+    public LogSearch withTimePattern(String timePattern) {
+        this.timestampParser = TimestampParser.of(timePattern);
+        return this;
+    }
+
+    /**
+     * Specifies the number of threads scanning files, defaults to the number of available processors.
+     *
+     * @param parallelism the number of threads to use
+     * @return this LogSearch, for further configuration
+     */
+    public LogSearch withParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    LogSearch withChunkSize(long chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    LogSearch withMaxOverhang(long maxOverhang) {
+        this.maxOverhang = maxOverhang;
+        return this;
+    }
+
+    /**
+     * Runs the search and collects the matching lines, meant for searches with a limited number of matches, see
+     * copyMatches for searches with many.
+     *
+     * @return the matching lines without line separators, in timestamp order
+     * @throws IOException if reading the log files fails
+     * @throws IllegalStateException if a time range is given, but a file has neither an index nor a time pattern
+     */
+    public List<String> search() throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        search(new Matches() {
+            @Override
+            public void match(String line) {
+                lines.add(line);
+            }
+        });
+        return lines;
+    }
+
+    /**
+     * Runs the search and copies the matching lines to the given stream as they are found, so that memory use does
+     * not depend on the number of matches.
+     *
+     * @param out the stream to copy the matching lines to, each one followed by a line separator
+     * @return the number of lines copied
+     * @throws IOException if reading the log files or writing to the stream fails
+     * @throws IllegalStateException if a time range is given, but a file has neither an index nor a time pattern
+     */
+    public long copyMatches(final OutputStream out) throws IOException {
+        long copied = search(new Matches() {
+            @Override
+            public void match(String line) throws IOException {
+                out.write((line + LINE_SEPARATOR).getBytes(CHARSET));
+            }
+        });
+        out.flush();
+        return copied;
+    }
+
+    // receives the matching lines in timestamp order
+    private interface Matches {
+        void match(String line) throws IOException;
+    }
+
+    // merges the matches of the files, each one already in timestamp order, with a k-way merge. A file is only
+    // scanned once the merge has reached its first timestamp, so that only files overlapping in time are scanned at
+    // the same time, each one with up to parallelism chunks in flight.
+    private long search(Matches matches) throws IOException {
+        List<SearchedFile> files = new ArrayList<SearchedFile>();
+        for (File file : RolledFiles.expand(this.fileNamePattern)) {
+            LogIndex index = LogIndex.load(file);
+            if (index == null && this.timestampParser == null && this.hasTimeRange) {
+                throw new IllegalStateException("cannot search " + file + " for a time range without an index or a time pattern!");
+            }
+            files.add(new SearchedFile(file, index, index == null ? this.timestampParser : null));
+        }
+        Collections.sort(files, new Comparator<SearchedFile>() {
+            @Override
+            public int compare(SearchedFile a, SearchedFile b) {
+                return Long.compare(a.baseMillis, b.baseMillis);
+            }
+        });
+
+        PriorityQueue<FileCursor> queue = new PriorityQueue<FileCursor>(Math.max(1, files.size()), new Comparator<FileCursor>() {
+            @Override
+            public int compare(FileCursor a, FileCursor b) {
+                return a.head.compareTo(b.head);
+            }
+        });
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        long matched = 0;
+        try {
+            int nextFile = 0;
+            while (true) {
+                // a file's lines are not older than its base, so it can wait until the merge has reached it
+                while (nextFile < files.size() && (queue.isEmpty() || files.get(nextFile).baseMillis <= queue.peek().head.millis)) {
+                    SearchedFile file = files.get(nextFile);
+                    file.order = nextFile++;
+                    FileCursor cursor = new FileCursor(file, pool);
+                    if (cursor.next()) {
+                        queue.add(cursor);
+                    }
+                }
+                if (queue.isEmpty()) {
+                    return matched;
+                }
+
+                FileCursor cursor = queue.poll();
+                matches.match(cursor.head.line);
+                matched++;
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // iterates over the matches of a file in order, scanning its chunks ahead in parallel
+    private class FileCursor {
+        private final SearchedFile file;
+        private final ForkJoinPool pool;
+        private final Deque<ForkJoinTask<List<Hit>>> pending = new ArrayDeque<ForkJoinTask<List<Hit>>>();
+        private long nextChunkStart = 0;
+        private Iterator<Hit> hits = Collections.<Hit>emptyList().iterator();
+        private Hit head;
+
+        FileCursor(SearchedFile file, ForkJoinPool pool) {
+            this.file = file;
+            this.pool = pool;
+        }
+
+        // moves on to the next match, returns false if there is none
+        boolean next() throws IOException {
+            while (!this.hits.hasNext()) {
+                while (this.pending.size() < LogSearch.this.parallelism && this.nextChunkStart < this.file.length) {
+                    final Chunk chunk = new Chunk(this.file, this.nextChunkStart, Math.min(this.file.length, this.nextChunkStart + LogSearch.this.chunkSize));
+                    this.pending.add(this.pool.submit(new Callable<List<Hit>>() {
+                        @Override
+                        public List<Hit> call() throws IOException {
+                            return scan(chunk);
+                        }
+                    }));
+                    this.nextChunkStart = chunk.end;
+                }
+                if (this.pending.isEmpty()) {
+                    this.head = null;
+                    return false;
+                }
+
+                try {
+                    this.hits = this.pending.poll().get().iterator();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while searching " + this.file.file);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new SearchException(e.getCause());
+                }
+            }
+            this.head = this.hits.next();
+            return true;
+        }
+    }
+
+    private List<Hit> scan(Chunk chunk) throws IOException {
+        List<Hit> hits = new ArrayList<Hit>();
+        RandomAccessFile in = new RandomAccessFile(chunk.file.file, "r");
+        try {
+            FileChannel channel = in.getChannel();
+
+            // a line belongs to the chunk it starts in, so look back one byte to tell if the chunk starts with a
+            // line, and map a bit beyond the chunk to cover its last line
+            long mapStart = Math.max(0, chunk.start - 1);
+            MappedByteBuffer buffer = map(channel, chunk.file.length, mapStart, chunk.end + this.maxOverhang - mapStart);
+
+            // the time of the last line with a timestamp, for the lines without one
+            long lastMillis = chunk.start == 0 ? chunk.file.baseMillis : Long.MIN_VALUE;
+            int position = 0;
+            if (chunk.start > 0) {
+                while (position < buffer.limit() && buffer.get(position++) != '\n') {
+                    // skip the line started in the previous chunk
+                }
+            }
+
+            while (mapStart + position < chunk.end) {
+                int lineStart = position;
+                while (true) {
+                    while (position < buffer.limit() && buffer.get(position) != '\n') {
+                        position++;
+                    }
+                    if (position < buffer.limit() || mapStart + position >= chunk.file.length) {
+                        break;
+                    }
+                    // the line is longer than the overhang, map it again from its start with more room
+                    int scanned = position - lineStart;
+                    mapStart += lineStart;
+                    buffer = map(channel, chunk.file.length, mapStart, 2L * scanned + this.maxOverhang);
+                    lineStart = 0;
+                    position = scanned;
+                }
+                int lineEnd = position > lineStart && buffer.get(position - 1) == '\r' ? position - 1 : position;
+                position++;
+
+                long offset = mapStart + lineStart;
+                long millis;
+                if (chunk.file.index != null) {
+                    millis = chunk.file.index.millisAt(offset);
+                } else if (chunk.file.timestampParser != null) {
+                    millis = parseTimestamp(chunk.file.timestampParser, buffer, lineStart, lineEnd);
+                    if (millis == Long.MIN_VALUE) {
+                        if (lastMillis == Long.MIN_VALUE) {
+                            lastMillis = timestampBefore(channel, chunk.file, offset);
+                        }
+                        millis = lastMillis;
+                    }
+                    lastMillis = millis;
+                } else {
+                    millis = chunk.file.baseMillis;
+                }
+                if (this.hasTimeRange) {
+                    long second = Math.floorDiv(millis, 1000);
+                    if (second < this.fromSecond || second > this.toSecond) {
+                        continue;
+                    }
+                }
+                if (this.literal != null && indexOf(buffer, lineStart, lineEnd, this.literal) < 0) {
+                    continue;
+                }
+                if (this.logName != null &&
+                    !startsWith(buffer, lineStart, lineEnd, this.logName) &&
+                    indexOf(buffer, lineStart, lineEnd, this.logNameAfterSeparator) < 0) {
+                    continue;
+                }
+
+                byte[] bytes = new byte[lineEnd - lineStart];
+                buffer.position(lineStart);
+                buffer.get(bytes, 0, bytes.length);
+                String line = new String(bytes, CHARSET);
+                if (this.regex != null && !this.regex.matcher(line).find()) {
+                    continue;
+                }
+                hits.add(new Hit(millis, chunk.file.order, offset, line));
+            }
+        } finally {
+            in.close();
+        }
+        return hits;
+    }
+
+    private static long parseTimestamp(TimestampParser timestampParser, MappedByteBuffer buffer, int lineStart, int lineEnd) {
+        byte[] bytes = new byte[Math.min(lineEnd - lineStart, MAX_TIMESTAMP_LENGTH)];
+        buffer.position(lineStart);
+        buffer.get(bytes, 0, bytes.length);
+        return timestampParser.parse(new String(bytes, CHARSET));
+    }
+
+    // finds the timestamp of the last line with one before the given offset, for chunks starting in a stack trace
+    private long timestampBefore(FileChannel channel, SearchedFile file, long offset) throws IOException {
+        // windows overlap by a byte, so that the start of a window can be told to start a line
+        long end = offset;
+        while (end > 0) {
+            long start = Math.max(0, end - Math.max(2, this.maxOverhang));
+            MappedByteBuffer buffer = map(channel, file.length, start, end - start);
+            for (int lineStart = buffer.limit() - 1; lineStart >= (start == 0 ? 0 : 1); lineStart--) {
+                if (lineStart == 0 || buffer.get(lineStart - 1) == '\n') {
+                    long millis = timestampAt(channel, file, start + lineStart);
+                    if (millis != Long.MIN_VALUE) {
+                        return millis;
+                    }
+                }
+            }
+            end = start == 0 ? 0 : start + 1;
+        }
+        // the first line has a timestamp, see SearchedFile
+        return file.baseMillis;
+    }
+
+    private static long timestampAt(FileChannel channel, SearchedFile file, long offset) throws IOException {
+        MappedByteBuffer buffer = map(channel, file.length, offset, MAX_TIMESTAMP_LENGTH);
+        return parseTimestamp(file.timestampParser, buffer, 0, buffer.limit());
+    }
+
+    // maps up to the given length, but not beyond the end of the file, lines are limited to 2 GB
+    private static MappedByteBuffer map(FileChannel channel, long fileLength, long start, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(Math.min(fileLength - start, length), Integer.MAX_VALUE));
+    }
+
+    private static boolean startsWith(MappedByteBuffer buffer, int from, int to, byte[] needle) {
+        return to - from >= needle.length && matchesAt(buffer, from, needle);
+    }
+
+    private static int indexOf(MappedByteBuffer buffer, int from, int to, byte[] needle) {
+        for (int i = from; i <= to - needle.length; i++) {
+            if (buffer.get(i) == needle[0] && matchesAt(buffer, i, needle)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matchesAt(MappedByteBuffer buffer, int position, byte[] needle) {
+        for (int j = 0; j < needle.length; j++) {
+            if (buffer.get(position + j) != needle[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class SearchedFile {
+        private final File file;
+        private final LogIndex index;
+        // parses the timestamps of the lines of a file without an index, or null if they are not parsed
+        private final TimestampParser timestampParser;
+        private final long length;
+        private final long baseMillis;
+        private int order;
+
+        SearchedFile(File file, LogIndex index, TimestampParser timestampParser) throws IOException {
+            this.file = file;
+            this.index = index;
+            this.timestampParser = timestampParser;
+            this.length = file.length();
+            if (index != null) {
+                this.baseMillis = index.firstMillis();
+            } else if (timestampParser != null && this.length > 0) {
+                this.baseMillis = firstTimestamp();
+            } else {
+                this.baseMillis = file.lastModified();
+            }
+        }
+
+        private long firstTimestamp() throws IOException {
+            RandomAccessFile in = new RandomAccessFile(this.file, "r");
+            try {
+                long millis = timestampAt(in.getChannel(), this, 0);
+                if (millis == Long.MIN_VALUE) {
+                    throw new IOException("cannot parse the timestamp of the first line of " + this.file + "!");
+                }
+                return millis;
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private static class Chunk {
+        private final SearchedFile file;
+        private final long start;
+        private final long end;
+
+        Chunk(SearchedFile file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static class Hit implements Comparable<Hit> {
+        private final long millis;
+        private final int fileOrder;
+        private final long offset;
+        private final String line;
+
+        Hit(long millis, int fileOrder, long offset, String line) {
+            this.millis = millis;
+            this.fileOrder = fileOrder;
+            this.offset = offset;
+            this.line = line;
+        }
+
+        @Override
+        public int compareTo(Hit other) {
+            if (this.millis != other.millis) {
+                return Long.compare(this.millis, other.millis);
+            } else if (this.fileOrder != other.fileOrder) {
+                return Integer.compare(this.fileOrder, other.fileOrder);
+            } else {
+                return Long.compare(this.offset, other.offset);
+            }
+        }
+    }
+
+    // a failure other than an IOException while scanning a chunk
+    private static class SearchException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SearchException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Prints the lines matching a search to stdout.
+     *
+     * Usage: LogSearch (-c minilogger.conf | -f fileNamePattern) [-l literal] [-r regex] [-n logName]
+     * [-from localDateTime] [-to localDateTime] [-p parallelism], where the Log name requires a config file to
+     * learn the logNameLength and separator from, as do time ranges over files without an index to learn the
+     * timePattern from, and date times look like 2017-08-28T14:02:00
+     *
+     * @param args the search options
+     * @throws IOException if reading the config or log files fails
+     */
+    public static void main(String[] args) throws IOException {
+        MiniLoggerBuilder config = null;
+        String fileNamePattern = null;
+        String literal = null;
+        String regex = null;
+        String logName = null;
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if ("-c".equals(args[i])) {
+                InputStream in = new FileInputStream(args[i + 1]);
+                try {
+                    config = MiniLoggerBuilder.fromStream(in);
+                } finally {
+                    in.close();
+                }
+            } else if ("-f".equals(args[i])) {
+                fileNamePattern = args[i + 1];
+            } else if ("-l".equals(args[i])) {
+                literal = args[i + 1];
+            } else if ("-r".equals(args[i])) {
+                regex = args[i + 1];
+            } else if ("-n".equals(args[i])) {
+                logName = args[i + 1];
+            } else if ("-from".equals(args[i])) {
+                from = LocalDateTime.parse(args[i + 1]);
+            } else if ("-to".equals(args[i])) {
+                to = LocalDateTime.parse(args[i + 1]);
+            } else if ("-p".equals(args[i])) {
+                parallelism = Integer.parseInt(args[i + 1]);
+            } else {
+                throw new IllegalArgumentException("Unexpected option " + args[i]);
+            }
+        }
+        if (fileNamePattern == null && config != null) {
+            fileNamePattern = config.getFileNamePattern();
+        }
+        if (args.length % 2 != 0 || fileNamePattern == null || (logName != null && config == null)) {
+            System.err.println("usage: LogSearch (-c minilogger.conf | -f fileNamePattern) [-l literal] [-r regex] [-n logName] [-from 2017-08-28T14:02:00] [-to 2017-08-28T14:05:00] [-p parallelism]");
+            System.exit(1);
+        }
+
+        LogSearch search = new LogSearch(fileNamePattern).withParallelism(parallelism);
+        if (literal != null) {
+            search.withLiteral(literal);
+        }
+        if (regex != null) {
+            search.withRegex(regex);
+        }
+        if (logName != null) {
+            search.withLogName(logName, config.getLogNameLength(), config.getSeparator());
+        }
+        if (config != null && config.getTimePattern() != null) {
+            search.withTimePattern(config.getTimePattern());
+        }
+        if (from != null || to != null) {
+            ZoneId zone = ZoneId.systemDefault();
+            search.withTimeRange(from == null ? Long.MIN_VALUE : from.atZone(zone).toInstant().toEpochMilli(),
+                                 to == null ? Long.MAX_VALUE : to.atZone(zone).toInstant().toEpochMilli());
+        }
+
+        search.copyMatches(new BufferedOutputStream(System.out));
+    }
+}
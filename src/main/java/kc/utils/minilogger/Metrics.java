@@ -0,0 +1,93 @@
+package kc.utils.minilogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Aggregates values recorded via Log.record and Log.timer into one Histogram per Log name and metric name, so that
+ * many values become a single summary line per interval. Recording neither formats nor locks; the first recording
+ * after an interval has passed claims the emission of all summaries.
+ */
+class Metrics {
+
+    static class Metric {
+        final String logName;
+        final String name;
+        private final AtomicReference<Histogram> current = new AtomicReference<Histogram>(new Histogram());
+
+        Metric(String logName, String name) {
+            this.logName = logName;
+            this.name = name;
+        }
+
+        void record(long value) {
+            this.current.get().record(value);
+        }
+
+        /**
+         * Starts a new interval. A value recorded concurrently may end up in the returned histogram after it has been
+         * summarized, and thus be missed.
+         *
+         * @return the histogram of the interval that just ended
+         */
+        Histogram swap() {
+            return this.current.getAndSet(new Histogram());
+        }
+    }
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Metric>> metricsByLogName =
+            new ConcurrentHashMap<String, ConcurrentMap<String, Metric>>();
+    private final AtomicLong nextSummaryMillis = new AtomicLong();
+    private volatile long interval;
+
+    Metrics(long interval) {
+        setInterval(interval);
+    }
+
+    void setInterval(long interval) {
+        this.interval = interval;
+        this.nextSummaryMillis.set(System.currentTimeMillis() + interval);
+    }
+
+    Metric get(String logName, String name) {
+        ConcurrentMap<String, Metric> metrics = this.metricsByLogName.get(logName);
+        if (metrics == null) {
+            metrics = new ConcurrentHashMap<String, Metric>();
+            ConcurrentMap<String, Metric> raced = this.metricsByLogName.putIfAbsent(logName, metrics);
+            if (raced != null) {
+                metrics = raced;
+            }
+        }
+
+        Metric metric = metrics.get(name);
+        if (metric == null) {
+            metric = new Metric(logName, name);
+            Metric raced = metrics.putIfAbsent(name, metric);
+            if (raced != null) {
+                metric = raced;
+            }
+        }
+        return metric;
+    }
+
+    /**
+     * @return true for exactly one caller once the current interval has passed, unless periodic summaries are off
+     */
+    boolean claimSummary(long now) {
+        long interval = this.interval;
+        long next = this.nextSummaryMillis.get();
+        return interval > 0 && now >= next && this.nextSummaryMillis.compareAndSet(next, now + interval);
+    }
+
+    List<Metric> all() {
+        List<Metric> all = new ArrayList<Metric>();
+        for (ConcurrentMap<String, Metric> metrics : this.metricsByLogName.values()) {
+            all.addAll(metrics.values());
+        }
+        return all;
+    }
+}
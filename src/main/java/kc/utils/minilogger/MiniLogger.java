@@ -1,40 +1,146 @@
 package kc.utils.minilogger;
 
-import java.io.FileNotFoundException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintStream;
 
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The MiniLogger class that manages configuration modifiable at run-time and generates Logs.
+ *
+ * Lines are formatted by the calling thread before any lock is taken. Writing to the file and the console is
+ * guarded by a ReentrantLock rather than by the synchronized monitors of a PrintStream, so that virtual threads
+ * waiting for their turn to write park instead of pinning their carrier threads. Note that the console stream is
+ * written to as given: the default console, System.err, is a PrintStream, which may still take its own monitor on
+ * every write and thus pin, depending on the Java version. Set a plain OutputStream, e.g. a FileOutputStream on
+ * FileDescriptor.err, or no console at all, where that matters.
  */
-public class MiniLogger {
+public class MiniLogger implements MiniLoggerMXBean {
 
-    public static final MiniLogger ROOT = MiniLoggerBuilder.fromDefaultConfigFile().build();
+    /**
+     * The default MiniLogger, configured from the default config file, see MiniLoggerBuilder.fromDefaultConfigFile.
+     * The config file is only read when the first line is logged or ROOT is reconfigured, not when this class is
+     * initialized, and log files are only opened when the first line is written.
+     */
+    public static final MiniLogger ROOT = deferred("/minilogger.conf");
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final String SHARED_LOCK_FILE_NAME = ".minilogger.lock";
+    private static final String DUMP_START_PATTERN = "dumping %d suppressed debug messages";
+    private static final String DUMP_END_PATTERN = "end of dump";
 
     // params set from outside
-    private boolean isDebugEnabled;
-    private String timePattern;
-    private String separator;
-    private int logNameLength;
-    private String fileNamePattern;
-    private PrintStream consoleStream;
-    private long progressSilencePeriod;
+    private volatile boolean isDebugEnabled;
+    private volatile String timePattern;
+    private volatile String separator;
+    private volatile int logNameLength;
+    private volatile String fileNamePattern;
+    private volatile OutputStream consoleStream;
+    private volatile long progressSilencePeriod;
     private Set<String> muteSet;
     private Set<String> focusSet;
+    private volatile boolean isDurable;
+    private final GroupCommitter groupCommitter;
+    private volatile int indexInterval;
+    private final StackTraceRenderer stackTraceRenderer = new StackTraceRenderer();
+    private volatile FlightRecorder flightRecorder;
+    private final Metrics metrics;
+    private volatile boolean isSharded;
+    private final ShardWriter shardWriter = new ShardWriter();
 
-    MiniLogger(boolean enableDebug, String timePattern, String separator, int logNameLength, String fileNamePattern, OutputStream consoleStream, long progressSilencePeriod, Set<String> muteSet, Set<String> focusSet) {
+    // the config resource to read on first use, null once configured
+    private volatile String pendingConfigResource = null;
+    private final ReentrantLock configurationLock = new ReentrantLock();
+    private volatile SocketSink socketSink;
+    private volatile boolean isSharedAppend;
+    private volatile int maxArgLength;
+    private volatile int maxLineLength;
+    private volatile boolean isCallerLocation;
+    // swapped by compare and set, so that a report never drops a tracker set meanwhile
+    private final AtomicReference<HeavyHitters> heavyHitters = new AtomicReference<HeavyHitters>();
+    // the tracker of the interval before the last report, its stripes are reused for the next interval. A reported
+    // tracker is only reused an interval later, so that lines still in flight to it cannot leak into the next one
+    private final AtomicReference<HeavyHitters> retiredHeavyHitters = new AtomicReference<HeavyHitters>();
+    private volatile long heavyHittersInterval;
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+    // copied on write, so that logging without subscribers only reads this field
+    private volatile Subscription[] subscriptions = NO_SUBSCRIPTIONS;
+    private final ReentrantLock subscriptionsLock = new ReentrantLock();
+
+    MiniLogger(boolean enableDebug, String timePattern, String separator, int logNameLength, String fileNamePattern, OutputStream consoleStream, long progressSilencePeriod, Set<String> muteSet, Set<String> focusSet, boolean durable, long commitMaxWaitMicros, int commitBatchSize, int indexInterval, int flightRecorderSize, long metricsInterval, boolean sharded, String socketAddress, boolean sharedAppend, int maxArgLength, int maxLineLength, boolean callerLocation, int heavyHitters, long heavyHittersInterval) {
         this.isDebugEnabled = enableDebug;
         this.timePattern = timePattern;
         this.separator = separator;
         this.logNameLength = logNameLength;
         this.fileNamePattern = fileNamePattern;
-        this.consoleStream = consoleStream == null?null:new PrintStream(consoleStream, false);
+        this.consoleStream = consoleStream;
         this.progressSilencePeriod = progressSilencePeriod;
         this.muteSet = muteSet;
         this.focusSet = focusSet;
+        this.isDurable = durable;
+        this.groupCommitter = new GroupCommitter(commitMaxWaitMicros, commitBatchSize);
+        this.indexInterval = indexInterval;
+        this.flightRecorder = flightRecorderSize > 0 ? new FlightRecorder(flightRecorderSize) : null;
+        this.metrics = new Metrics(metricsInterval);
+        this.isSharded = sharded;
+        this.socketSink = socketAddress != null ? newSocketSink(socketAddress) : null;
+        this.isSharedAppend = sharedAppend;
+        this.maxArgLength = maxArgLength;
+        this.maxLineLength = maxLineLength;
+        this.isCallerLocation = callerLocation;
+        this.heavyHittersInterval = heavyHittersInterval;
+        this.heavyHitters.set(heavyHitters > 0 ? new HeavyHitters(heavyHitters, heavyHittersInterval) : null);
+    }
+
+    // creates a MiniLogger with the default config that reads the given config resource on first use
+    static MiniLogger deferred(String configResource) {
+        MiniLogger miniLogger = new MiniLoggerBuilder().build();
+        miniLogger.pendingConfigResource = configResource;
+        return miniLogger;
+    }
+
+    private void ensureConfigured() {
+        if (this.pendingConfigResource != null) {
+            configure();
+        }
+    }
+
+    private void configure() {
+        this.configurationLock.lock();
+        try {
+            // the setters called while configuring return here right away
+            String configResource = this.pendingConfigResource;
+            if (configResource != null && this.configurationLock.getHoldCount() == 1) {
+                MiniLoggerBuilder.fromConfigResource(configResource).configure(this);
+                this.pendingConfigResource = null;
+            }
+        } finally {
+            this.configurationLock.unlock();
+        }
+    }
+
+    boolean isConfigured() {
+        return this.pendingConfigResource == null;
     }
 
     /**
@@ -45,8 +151,8 @@ public class MiniLogger {
      * @return the Log created
      */
     public Log getLog() {
-        StackTraceElement stackTraceElement = Thread.currentThread().getStackTrace()[2];
-        String name = stackTraceElement.getClassName();
+        // only the calling frame is walked, rather than capturing the whole stack trace
+        String name = CallerLocator.STACK_WALKER.getCallerClass().getName();
         return getLog(name.substring(name.lastIndexOf('.') + 1));
     }
 
@@ -61,100 +167,722 @@ public class MiniLogger {
         return new Log(this, name);
     }
 
-    private StringBuilder makeLine(String logName, String pattern, Object...params) {
+    private StringBuilder makeLine(Calendar now, String logName, String callerLocation, LogContext context, String pattern, Args args) {
         StringBuilder lineBuilder = new StringBuilder();
 
         if (this.timePattern != null) {
-            lineBuilder.append(String.format(this.timePattern, Calendar.getInstance()))
+            lineBuilder.append(String.format(this.timePattern, now))
+                       .append(this.separator);
+        }
+
+        int logNameLength = this.logNameLength;
+        if (logNameLength > 0) {
+            // same as formatting with %<logNameLength>.<logNameLength>s
+            String name = String.valueOf(logName);
+            for (int i = name.length(); i < logNameLength; i++) {
+                lineBuilder.append(' ');
+            }
+            lineBuilder.append(name, 0, Math.min(logNameLength, name.length()))
                        .append(this.separator);
         }
 
-        if (this.logNameLength > 0) {
-            lineBuilder.append(String.format("%" + this.logNameLength + "." + this.logNameLength + "s", logName))
+        if (callerLocation != null) {
+            lineBuilder.append(callerLocation)
                        .append(this.separator);
         }
 
-        lineBuilder.append(String.format(pattern, params));
+        if (context != null && context.appendTo(lineBuilder)) {
+            lineBuilder.append(this.separator);
+        }
+
+        LineFormatter.format(lineBuilder, pattern, args, this.maxArgLength, this.maxLineLength);
 
         return lineBuilder;
     }
 
-    private PrintStream fileStream = null;
+    // resolved only for lines that are actually written, suppressed calls never walk the stack
+    private String locateCaller() {
+        return this.isCallerLocation ? CallerLocator.locate() : null;
+    }
+
+    // guards the file and console streams as well as the progress state below
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private FileOutputStream fileStream = null;
     private String fileLastName = null;
+    private long fileOffset = 0;
+    // the time the file has last been rolled at, and the calendar to format its name with
+    private long fileRollMillis = 0;
+    private final Calendar fileRollCalendar = Calendar.getInstance();
+    private LogIndexWriter fileIndex = null;
     void toFileAndConsole(String logName, boolean isDebug, String pattern, Object... params) {
+        toFileAndConsole(logName, isDebug, null, pattern, Args.wrap(params));
+    }
+
+    void toFileAndConsole(String logName, boolean isDebug, Throwable throwable, String pattern, Object... params) {
+        toFileAndConsole(logName, isDebug, throwable, pattern, Args.wrap(params));
+    }
+
+    void toFileAndConsole(String logName, boolean isDebug, Throwable throwable, String pattern, Args args) {
+        try {
+            ensureConfigured();
+            toFileAndConsoleAndRelease(logName, isDebug, throwable, pattern, args, true);
+        } finally {
+            args.release();
+        }
+    }
+
+    // writes an info line this MiniLogger generates itself, e.g. a summary, which has no call site to locate
+    private void toFileAndConsoleInternally(String logName, String pattern, Args args) {
+        try {
+            toFileAndConsoleAndRelease(logName, false, null, pattern, args, false);
+        } finally {
+            args.release();
+        }
+    }
+
+    private void toFileAndConsoleAndRelease(String logName, boolean isDebug, Throwable throwable, String pattern, Args args, boolean isLocated) {
         if ((isDebug && this.muteSet.contains(logName)) ||
             (isDebug && !this.isDebugEnabled && !this.focusSet.contains(logName))) {
-            // it is a muted logger or neither is debug enabled nor is this logger focused on. skip this debug message
+            // it is a muted logger or neither is debug enabled nor is this logger focused on. skip this debug message,
+            // but keep it around for a later dump if the flight recorder is on
+            FlightRecorder flightRecorder = this.flightRecorder;
+            if (flightRecorder != null) {
+                flightRecorder.record(System.currentTimeMillis(), logName, throwable, pattern, args);
+            }
+            recordVolume(logName, pattern, true, 0);
             return;
         }
 
-        // roll files if necessary
-        if (this.fileNamePattern == null) {
-            this.fileStream = null;
-            this.fileLastName = null;
-        } else {
-            String newFileName = String.format(this.fileNamePattern, Calendar.getInstance());
-            if (!newFileName.equals(fileLastName)) {
-                fileLastName = newFileName;
-                if (fileStream != null) {
-                    fileStream.close();
-                }
-                try {
-                    fileStream = new PrintStream(newFileName);
-                } catch (FileNotFoundException e) {
-                    throw new RuntimeException("cannot log to " + newFileName + "!", e);
+        // an info call with a Throwable is an error, dump the debug context that led to it first
+        if (!isDebug && throwable != null) {
+            dump();
+        }
+
+        // format outside of the lock, only the actual writing is serialized
+        Calendar now = Calendar.getInstance();
+        StringBuilder line = makeLine(now, logName, isLocated ? locateCaller() : null, LogContext.current(), pattern, args);
+        StackTraceRenderer.Trace trace = throwable != null ? this.stackTraceRenderer.prepare(throwable) : null;
+        int bytes = writeLine(now, now.getTimeInMillis(), line, trace);
+        publish(logName, isDebug, line);
+        recordVolume(logName, pattern, false, bytes);
+    }
+
+    // counts the line for the heavy hitters, if tracked
+    private void recordVolume(String logName, String pattern, boolean isSuppressed, int bytes) {
+        HeavyHitters heavyHitters = this.heavyHitters.get();
+        if (heavyHitters != null) {
+            heavyHitters.record(logName, pattern, isSuppressed, bytes);
+            if (heavyHitters.claimReport(System.currentTimeMillis())) {
+                reportHeavyHitters();
+            }
+        }
+    }
+
+    // hands a written line to the subscribers interested in it
+    private void publish(String logName, boolean isDebug, StringBuilder line) {
+        Subscription[] subscriptions = this.subscriptions;
+        if (subscriptions.length == 0) {
+            return;
+        }
+
+        String lineString = null;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accepts(logName, isDebug)) {
+                if (lineString == null) {
+                    lineString = line.toString();
                 }
+                subscription.deliver(lineString);
+            }
+        }
+    }
+
+    // a formatted line on its way to the file and console, see writeLine
+    private static final class PendingLine {
+        private final long millis;
+        private final StringBuilder line;
+        private StackTraceRenderer.Trace trace;
+        private byte[] bytes = null;
+        // sent to the collector or written to a shard, so that it does not go to the file
+        private boolean isHandedOff = false;
+
+        PendingLine(long millis, StringBuilder line, StackTraceRenderer.Trace trace) {
+            this.millis = millis;
+            this.line = line;
+            this.trace = trace;
+        }
+    }
+
+    // writes a formatted line without line separator, followed by the given trace if any, to the current file and to
+    // the console, returns the number of bytes of the line; the given time only names the shard, if sharded
+    private int writeLine(Calendar now, long lineMillis, StringBuilder line, StackTraceRenderer.Trace trace) {
+        PendingLine pendingLine = new PendingLine(lineMillis, line, trace);
+        boolean isSharded = this.isSharded;
+        sendOrShard(now, pendingLine, isSharded);
+        if (isSharded && this.consoleStream == null) {
+            // there is nothing left to write, so there is no need to wait for other threads
+            return pendingLine.bytes.length;
+        }
+
+        long commitSequence;
+        this.writeLock.lock();
+        try {
+            if (!isSharded) {
+                rollFile();
+            }
+            commitSequence = appendLine(pendingLine);
+        } finally {
+            this.writeLock.unlock();
+        }
+
+        awaitCommit(commitSequence);
+        return pendingLine.bytes.length;
+    }
+
+    // writes several lines like writeLine, but without other lines in between and sharing a single commit
+    private void writeLines(Calendar now, List<PendingLine> pendingLines) {
+        boolean isSharded = this.isSharded;
+        for (PendingLine pendingLine : pendingLines) {
+            sendOrShard(now, pendingLine, isSharded);
+        }
+        if (isSharded && this.consoleStream == null) {
+            return;
+        }
+
+        long commitSequence = -1;
+        this.writeLock.lock();
+        try {
+            if (!isSharded) {
+                rollFile();
+            }
+            for (PendingLine pendingLine : pendingLines) {
+                commitSequence = Math.max(commitSequence, appendLine(pendingLine));
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+
+        awaitCommit(commitSequence);
+    }
+
+    // hands the line to the collector if connected and to this threads shard otherwise if sharded, neither waiting
+    // for other threads; a line with a trace is left to appendLine unless sharded
+    private void sendOrShard(Calendar now, PendingLine pendingLine, boolean isSharded) {
+        if (pendingLine.trace != null) {
+            if (!isSharded) {
+                return;
             }
+            // lines of different shards are only ordered by time, so a reference could precede its trace
+            this.stackTraceRenderer.appendInFull(pendingLine.line, pendingLine.trace);
+            pendingLine.trace = null;
         }
 
+        pendingLine.bytes = toBytes(pendingLine.line);
+        SocketSink socketSink = this.socketSink;
+        pendingLine.isHandedOff = socketSink != null && socketSink.offer(pendingLine.bytes);
+        if (isSharded && !pendingLine.isHandedOff) {
+            String fileNamePattern = this.fileNamePattern;
+            if (fileNamePattern != null) {
+                this.shardWriter.write(String.format(fileNamePattern, now), pendingLine.millis, pendingLine.bytes);
+            }
+            pendingLine.isHandedOff = true;
+        }
+    }
+
+    // writes the line to the file unless it has been handed off, and to the console, must be called holding the
+    // writeLock; returns the sequence number to await the commit of, or -1
+    private long appendLine(PendingLine pendingLine) {
+        // lines with a trace are numbered and encoded holding the lock, see StackTraceRenderer
+        StringBuilder line = pendingLine.line;
+        if (pendingLine.trace != null) {
+            this.stackTraceRenderer.append(line, pendingLine.trace);
+            pendingLine.bytes = toBytes(line);
+            SocketSink socketSink = this.socketSink;
+            pendingLine.isHandedOff = socketSink != null && socketSink.offer(pendingLine.bytes);
+        }
+        byte[] fileBytes = pendingLine.bytes;
+        int lineLength = line.length();
+
         // log to file
-        StringBuilder line = makeLine(logName, pattern, params);
-        if (this.fileStream != null) {
-            this.fileStream.println(line);
-            this.fileStream.flush();
+        long commitSequence = -1;
+        if (this.fileStream != null && !pendingLine.isHandedOff) {
+            if (this.fileIndex != null) {
+                this.fileIndex.lineAt(pendingLine.millis, this.fileOffset);
+            }
+            write(this.fileStream, fileBytes, this.fileLastName);
+            this.fileOffset += fileBytes.length;
+            if (this.isDurable) {
+                commitSequence = this.groupCommitter.appended(this.fileStream.getChannel());
+            }
         }
 
         // prolong message to cover possible previous progress and log to console
-        if (this.consoleStream != null) {
-            while (line.length() < this.progressLastLineLength) {
-                line.append(' ');
+        OutputStream consoleStream = this.consoleStream;
+        if (consoleStream != null) {
+            if (lineLength < this.progressLastLineLength) {
+                while (line.length() < this.progressLastLineLength) {
+                    line.append(' ');
+                }
+                write(consoleStream, toBytes(line), "console");
+                line.setLength(lineLength);
+            } else {
+                write(consoleStream, fileBytes, "console");
             }
-            this.consoleStream.println(line);
-            this.consoleStream.flush();
         }
 
         // mark that previous progress is overwritted
         this.progressLastLineLength = 0;
+        return commitSequence;
+    }
+
+    // waits for the line to be on disk, sharing the commit with everyone else writing meanwhile
+    private void awaitCommit(long commitSequence) {
+        if (commitSequence >= 0) {
+            this.groupCommitter.awaitCommit(commitSequence);
+        }
+    }
+
+    private static byte[] toBytes(StringBuilder line) {
+        int lineLength = line.length();
+        byte[] bytes = line.append(LINE_SEPARATOR).toString().getBytes(CHARSET);
+        line.setLength(lineLength);
+        return bytes;
+    }
+
+    private SocketSink newSocketSink(String socketAddress) {
+        return new SocketSink(socketAddress, new SocketSink.Spill() {
+            @Override
+            public void spill(byte[] lineBytes) {
+                spillToFile(lineBytes);
+            }
+        });
+    }
+
+    // writes a line the socket sink could not send to the file or this threads shard instead, not durably
+    private void spillToFile(byte[] lineBytes) {
+        Calendar now = Calendar.getInstance();
+        if (this.isSharded) {
+            String fileNamePattern = this.fileNamePattern;
+            if (fileNamePattern != null) {
+                this.shardWriter.write(String.format(fileNamePattern, now), now.getTimeInMillis(), lineBytes);
+            }
+            return;
+        }
+
+        this.writeLock.lock();
+        try {
+            rollFile();
+            if (this.fileStream != null) {
+                if (this.fileIndex != null) {
+                    this.fileIndex.lineAt(now.getTimeInMillis(), this.fileOffset);
+                }
+                write(this.fileStream, lineBytes, this.fileLastName);
+                this.fileOffset += lineBytes.length;
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    // roll files if necessary, must be called holding the writeLock. The period rolled to is taken from a clock read
+    // holding the lock, rather than the time of the line, and never goes back, so that a thread that read the clock
+    // before another one rolled does not roll back to, and truncate, the previous file
+    private void rollFile() {
+        String fileNamePattern = this.fileNamePattern;
+        if (fileNamePattern == null) {
+            closeFile();
+        } else {
+            this.fileRollMillis = Math.max(this.fileRollMillis, System.currentTimeMillis());
+            this.fileRollCalendar.setTimeInMillis(this.fileRollMillis);
+            String newFileName = String.format(fileNamePattern, this.fileRollCalendar);
+            if (!newFileName.equals(this.fileLastName)) {
+                closeFile();
+                boolean isSharedAppend = this.isSharedAppend;
+                try {
+                    this.fileStream = isSharedAppend ? openSharedFile(fileNamePattern, newFileName, this.fileRollMillis) : new FileOutputStream(newFileName);
+                } catch (IOException e) {
+                    throw new RuntimeException("cannot log to " + newFileName + "!", e);
+                }
+                this.fileLastName = newFileName;
+                this.fileOffset = 0;
+                this.stackTraceRenderer.clear();
+                if (this.indexInterval > 0 && !isSharedAppend) {
+                    this.fileIndex = new LogIndexWriter(newFileName, this.indexInterval);
+                }
+            }
+        }
+    }
+
+    // serializes rolls of MiniLoggers of this process, as file locks are held on behalf of the whole process
+    private static final ReentrantLock SHARED_ROLL_LOCK = new ReentrantLock();
+
+    // opens a file shared with other processes in append mode, must be called holding the writeLock. The lock file
+    // records, per file name pattern, the file last rolled to and the time it was rolled at: a file rolled to later
+    // than that is left over from an earlier period and truncated, while the recorded file itself, or one rolled to
+    // no later than that, has been rolled to by another process already and is appended to
+    private static FileOutputStream openSharedFile(String fileNamePattern, String fileName, long rollMillis) throws IOException {
+        File file = new File(fileName).getAbsoluteFile();
+        SHARED_ROLL_LOCK.lock();
+        try {
+            FileChannel lockChannel = FileChannel.open(new File(file.getParentFile(), SHARED_LOCK_FILE_NAME).toPath(),
+                                                       StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                FileLock lock = lockChannel.lock();
+                try {
+                    Properties rolls = new Properties();
+                    rolls.load(Channels.newInputStream(lockChannel));
+                    String lastRoll = rolls.getProperty(fileNamePattern);
+                    int split = lastRoll == null ? -1 : lastRoll.indexOf(' ');
+                    long lastRollMillis = split < 0 ? 0 : Long.parseLong(lastRoll.substring(0, split));
+                    String lastFileName = split < 0 ? null : lastRoll.substring(split + 1);
+                    if (!file.getPath().equals(lastFileName) && rollMillis > lastRollMillis) {
+                        // no roll recorded yet means no period to compare with, so the file is appended to
+                        if (lastFileName != null) {
+                            new FileOutputStream(file).close();
+                        }
+                        rolls.setProperty(fileNamePattern, rollMillis + " " + file.getPath());
+                        lockChannel.truncate(0);
+                        rolls.store(Channels.newOutputStream(lockChannel), null);
+                    }
+                    return new FileOutputStream(file, true);
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockChannel.close();
+            }
+        } finally {
+            SHARED_ROLL_LOCK.unlock();
+        }
+    }
+
+    // must be called holding the writeLock
+    private void closeFile() {
+        if (this.fileStream != null) {
+            this.groupCommitter.beforeClose(this.fileStream.getChannel());
+            try {
+                this.fileStream.close();
+            } catch (IOException e) {
+                // ignore this, the file is not written to anymore
+            }
+        }
+        if (this.fileIndex != null) {
+            this.fileIndex.close();
+        }
+        this.fileStream = null;
+        this.fileIndex = null;
+        this.fileLastName = null;
+    }
+
+    private static void write(OutputStream out, byte[] bytes, String target) {
+        try {
+            out.write(bytes);
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("cannot log to " + target + "!", e);
+        }
     }
 
     private int progressLastLineLength = 0;
-    private long progressLastAction = -1;
+    private volatile long progressLastAction = -1;
     void toConsoleNoNewline(String logName, String pattern, Object... params) {
+        toConsoleNoNewline(logName, pattern, Args.wrap(params));
+    }
+
+    void toConsoleNoNewline(String logName, String pattern, Args args) {
+        try {
+            ensureConfigured();
+            toConsoleNoNewlineAndRelease(logName, pattern, args);
+        } finally {
+            args.release();
+        }
+    }
+
+    private void toConsoleNoNewlineAndRelease(String logName, String pattern, Args args) {
         if (this.consoleStream == null ||
             this.progressLastAction + this.progressSilencePeriod > System.currentTimeMillis()) {
             // consoleStream is null or progress has just been updated, skip this
+            recordVolume(logName, pattern, true, 0);
             return;
         }
 
-        StringBuilder line = makeLine(logName, pattern, params);
+        StringBuilder line = makeLine(Calendar.getInstance(), logName, locateCaller(), LogContext.current(), pattern, args);
         int currentLineLength = line.length();
-        while (line.length() < this.progressLastLineLength) {
-            line.append(' ');
+
+        byte[] lineBytes;
+        this.writeLock.lock();
+        try {
+            OutputStream consoleStream = this.consoleStream;
+            if (consoleStream == null) {
+                return;
+            }
+
+            while (line.length() < this.progressLastLineLength) {
+                line.append(' ');
+            }
+            this.progressLastLineLength = currentLineLength;
+            this.progressLastAction = System.currentTimeMillis();
+            line.append('\r');
+
+            lineBytes = line.toString().getBytes(CHARSET);
+            write(consoleStream, lineBytes, "console");
+        } finally {
+            this.writeLock.unlock();
+        }
+        recordVolume(logName, pattern, false, lineBytes.length);
+    }
+
+
+    /**
+     * Formats and writes all debug messages kept by the flight recorder, oldest first and framed by two info lines,
+     * and clears the flight recorder. Called automatically before an info message with a Throwable is logged. Does
+     * nothing if the flight recorder is disabled or empty.
+     */
+    @Override
+    public void dump() {
+        ensureConfigured();
+        FlightRecorder flightRecorder = this.flightRecorder;
+        if (flightRecorder == null) {
+            return;
+        }
+        List<FlightRecorder.Event> events = flightRecorder.drain();
+        if (events.isEmpty()) {
+            return;
         }
-        this.progressLastLineLength = currentLineLength;
-        this.progressLastAction = System.currentTimeMillis();
-        line.append('\r');
 
-        this.consoleStream.print(line);
-        this.consoleStream.flush();
+        // format outside of the lock, then write all lines at once, framed by two info lines; the lines show the time
+        // of their events, but are written at the current time, so that indexes and shards stay ordered by time
+        Calendar now = Calendar.getInstance();
+        Calendar then = Calendar.getInstance();
+        List<PendingLine> pendingLines = new ArrayList<PendingLine>(events.size() + 2);
+        Args countArgs = Args.of(events.size());
+        try {
+            pendingLines.add(new PendingLine(now.getTimeInMillis(), makeLine(now, "FlightRecorder", null, null, DUMP_START_PATTERN, countArgs), null));
+        } finally {
+            countArgs.release();
+        }
+        for (FlightRecorder.Event event : events) {
+            then.setTimeInMillis(event.millis);
+            StringBuilder line = makeLine(then, event.logName, null, null, event.pattern, event.args);
+            pendingLines.add(new PendingLine(now.getTimeInMillis(), line, event.throwable != null ? this.stackTraceRenderer.prepare(event.throwable) : null));
+        }
+        Args noArgs = Args.of();
+        try {
+            pendingLines.add(new PendingLine(now.getTimeInMillis(), makeLine(now, "FlightRecorder", null, null, DUMP_END_PATTERN, noArgs), null));
+        } finally {
+            noArgs.release();
+        }
+        writeLines(now, pendingLines);
+
+        for (int i = 0; i < pendingLines.size(); i++) {
+            boolean isFrame = i == 0 || i == pendingLines.size() - 1;
+            PendingLine pendingLine = pendingLines.get(i);
+            publish(isFrame ? "FlightRecorder" : events.get(i - 1).logName, !isFrame, pendingLine.line);
+            if (isFrame) {
+                recordVolume("FlightRecorder", i == 0 ? DUMP_START_PATTERN : DUMP_END_PATTERN, false, pendingLine.bytes.length);
+            }
+        }
+    }
+
+    void record(String logName, String metricName, long value) {
+        ensureConfigured();
+        this.metrics.get(logName, metricName).record(value);
+        if (this.metrics.claimSummary(System.currentTimeMillis())) {
+            flushMetrics();
+        }
+    }
+
+    /**
+     * Writes one info line per metric recorded via Log.record or Log.timer since the last summary, with count, min,
+     * p50, p99, p999, and max, and starts a new interval for all metrics. Called automatically by the first recording
+     * after the metrics interval has passed. Metrics without values in the interval are skipped.
+     */
+    @Override
+    public void flushMetrics() {
+        ensureConfigured();
+        for (Metrics.Metric metric : this.metrics.all()) {
+            Histogram histogram = metric.swap();
+            if (histogram.getCount() > 0) {
+                toFileAndConsoleInternally(metric.logName, "%s: %s", Args.of(metric.name, histogram));
+            }
+        }
+    }
+
+    /**
+     * Returns the Log names and patterns that account for the most lines since the last heavy hitter report, written
+     * and suppressed ones alike, e.g. to find a Log to mute when the log volume spikes.
+     *
+     * @return the heavy hitters, heaviest first, or an empty list if heavy hitters are not tracked
+     */
+    public List<HeavyHitter> getHeavyHitters() {
+        ensureConfigured();
+        HeavyHitters heavyHitters = this.heavyHitters.get();
+        return heavyHitters != null ? heavyHitters.top() : new ArrayList<HeavyHitter>();
     }
 
+    /**
+     * Writes an info line with the number of lines since the last report, followed by one info line per heavy hitter
+     * with its estimated number of lines, suppressed lines, and bytes, and starts a new interval. Called
+     * automatically by the first line after the heavy hitters interval has passed. Does nothing if heavy hitters
+     * are not tracked.
+     */
+    @Override
+    public void reportHeavyHitters() {
+        ensureConfigured();
+        HeavyHitters heavyHitters = this.heavyHitters.get();
+        if (heavyHitters == null) {
+            return;
+        }
+        HeavyHitters next = new HeavyHitters(heavyHitters.size(), heavyHitters.interval(), this.retiredHeavyHitters.getAndSet(null));
+        if (!this.heavyHitters.compareAndSet(heavyHitters, next)) {
+            // replaced by a setter or another report meanwhile
+            return;
+        }
+
+        long seconds = (System.currentTimeMillis() - heavyHitters.startMillis()) / 1000;
+        toFileAndConsoleInternally("HeavyHitters", "%d lines in %d s, heaviest first:", Args.of(heavyHitters.totalLines(), seconds));
+        for (HeavyHitter heavyHitter : heavyHitters.top()) {
+            toFileAndConsoleInternally("HeavyHitters", "%s", Args.of(heavyHitter));
+        }
+        this.retiredHeavyHitters.set(heavyHitters);
+    }
+
+    /**
+     * Registers this MiniLogger with the platform MBean server, so that, e.g., the flight recorder can be dumped via
+     * JMX. The object name is kc.utils.minilogger:type=MiniLogger,name= followed by the given name.
+     *
+     * @param name the name to register this MiniLogger with
+     */
+    public void registerMBean(String name) {
+        ensureConfigured();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("kc.utils.minilogger:type=MiniLogger,name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            throw new RuntimeException("cannot register MBean " + name + "!", e);
+        }
+    }
+
+    /**
+     * Subscribes to the lines written from now on, e.g. to show them live on an admin page. Each Subscription buffers
+     * up to the given number of lines and drops lines according to its drop policy when full, so that a slow
+     * subscriber never holds up logging. Without subscriptions, logging does not do any extra work.
+     *
+     * @param logNames the names of the Logs to receive lines from, or null for all Logs
+     * @param includeDebug whether to receive debug lines as well, as far as they are written
+     * @param capacity the number of lines to buffer
+     * @param dropPolicy what to drop when the buffer is full
+     * @return the Subscription, to be closed when done
+     */
+    public Subscription subscribe(Set<String> logNames, boolean includeDebug, int capacity, Subscription.DropPolicy dropPolicy) {
+        ensureConfigured();
+        Subscription subscription = new Subscription(this, logNames == null ? null : new HashSet<String>(logNames), includeDebug, capacity, dropPolicy);
+        this.subscriptionsLock.lock();
+        try {
+            Subscription[] subscriptions = Arrays.copyOf(this.subscriptions, this.subscriptions.length + 1);
+            subscriptions[subscriptions.length - 1] = subscription;
+            this.subscriptions = subscriptions;
+        } finally {
+            this.subscriptionsLock.unlock();
+        }
+        return subscription;
+    }
+
+    void unsubscribe(Subscription subscription) {
+        this.subscriptionsLock.lock();
+        try {
+            Subscription[] subscriptions = this.subscriptions;
+            for (int i = 0; i < subscriptions.length; i++) {
+                if (subscriptions[i] == subscription) {
+                    Subscription[] remaining = new Subscription[subscriptions.length - 1];
+                    System.arraycopy(subscriptions, 0, remaining, 0, i);
+                    System.arraycopy(subscriptions, i + 1, remaining, i, remaining.length - i);
+                    this.subscriptions = remaining.length > 0 ? remaining : NO_SUBSCRIPTIONS;
+                    return;
+                }
+            }
+        } finally {
+            this.subscriptionsLock.unlock();
+        }
+    }
+
+    /**
+     * Adds a field, e.g. a request id, to every line the calling thread writes until the returned scope is closed,
+     * after the Log name and the caller location. Putting a key again overwrites its value in the scope. The context
+     * is shared by all MiniLoggers, and it is only rendered for lines that are written, so that suppressed debug
+     * calls never touch it. Values are rendered with String.valueOf once per context, so they should not change.
+     *
+     * @param key the name of the field
+     * @param value the value of the field, or null to remove the field in the scope
+     * @return the scope, to be closed when done
+     * @throws IllegalArgumentException if the key is null
+     */
+    public LogContext putContext(String key, Object value) {
+        return LogContext.push(key, value);
+    }
+
+    /**
+     * Removes a field from the lines the calling thread writes until the returned scope is closed.
+     *
+     * @param key the name of the field
+     * @return the scope, to be closed when done
+     * @throws IllegalArgumentException if the key is null
+     */
+    public LogContext removeContext(String key) {
+        return LogContext.push(key, null);
+    }
+
+    /**
+     * Captures the context of the calling thread, to be used by the returned Runnable while it runs, e.g. on an
+     * executor or a virtual thread. The thread running it gets its own context back afterwards.
+     *
+     * @param runnable the task to run with the context of the calling thread
+     * @return the wrapped task
+     */
+    public Runnable wrap(Runnable runnable) {
+        return LogContext.wrap(runnable);
+    }
+
+    /**
+     * Captures the context of the calling thread, to be used by the returned Callable while it runs, see
+     * wrap(Runnable).
+     *
+     * @param callable the task to run with the context of the calling thread
+     * @return the wrapped task
+     */
+    public <T> Callable<T> wrap(Callable<T> callable) {
+        return LogContext.wrap(callable);
+    }
+
+    /**
+     * Updates the size of the flight recorder. If positive, suppressed debug messages are kept in memory unformatted,
+     * up to about the given number of most recent ones, to be written when dump is called or an info message with a
+     * Throwable is logged. Large flight recorders are split into stripes shared by a subset of threads each. Zero
+     * disables the flight recorder. Messages recorded so far are dropped.
+     *
+     * @param flightRecorderSize the number of suppressed debug messages to keep, or zero
+     */
+    public void setFlightRecorderSize(int flightRecorderSize) {
+        ensureConfigured();
+        this.flightRecorder = flightRecorderSize > 0 ? new FlightRecorder(flightRecorderSize) : null;
+    }
+
+    /**
+     * Updates the interval after which the metrics recorded via Log.record and Log.timer are summarized, in
+     * milliseconds. Zero disables periodic summaries, leaving them to flushMetrics. The current interval restarts.
+     *
+     * @param metricsInterval the time between two summaries, or zero
+     */
+    public void setMetricsInterval(long metricsInterval) {
+        ensureConfigured();
+        this.metrics.setInterval(metricsInterval);
+    }
 
     /**
      * Enables debugging for Logs from this MiniLogger, so that all debug messages from non-muted Loggers will
      * be logged.
      */
     public void enableDebug() {
+        ensureConfigured();
         this.isDebugEnabled = true;
     }
 
@@ -163,6 +891,7 @@ public class MiniLogger {
      * be skipped.
      */
     public void disableDebug() {
+        ensureConfigured();
         this.isDebugEnabled = false;
     }
 
@@ -173,6 +902,7 @@ public class MiniLogger {
      * @param name the Log name to focus on going forward
      */
     public void focus(String name) {
+        ensureConfigured();
         this.focusSet.add(name);
     }
 
@@ -183,6 +913,7 @@ public class MiniLogger {
      * @param name the Log name to no longer focus on going forward
      */
     public void unFocus(String name) {
+        ensureConfigured();
         this.focusSet.remove(name);
     }
 
@@ -193,6 +924,7 @@ public class MiniLogger {
      * @param name the Log name to mute going forward
      */
     public void mute(String name) {
+        ensureConfigured();
         this.muteSet.add(name);
     }
 
@@ -203,6 +935,7 @@ public class MiniLogger {
      * @param name the Log name to not mute anymore going forward
      */
     public void unMute(String name) {
+        ensureConfigured();
         this.muteSet.remove(name);
     }
 
@@ -213,6 +946,7 @@ public class MiniLogger {
      * @param timePattern the time pattern to use
      */
     public void setTimePattern(String timePattern) {
+        ensureConfigured();
         this.timePattern = timePattern;
     }
 
@@ -224,6 +958,7 @@ public class MiniLogger {
      * @param separator the new separator to use between the timestamp, the Log name, and the Log message.
      */
     public void setSeparator(String separator) {
+        ensureConfigured();
         this.separator = separator;
     }
 
@@ -234,6 +969,7 @@ public class MiniLogger {
      * @param logNameLength the new logNameLength to pad or abbreviate future Log names to.
      */
     public void setLogNameLength(int logNameLength) {
+        ensureConfigured();
         this.logNameLength = logNameLength;
     }
 
@@ -244,6 +980,7 @@ public class MiniLogger {
      * @param progressSilencePeriod the new minimum period between to printed progress statements
      */
     public void setProgressSilencePeriod(long progressSilencePeriod) {
+        ensureConfigured();
         this.progressSilencePeriod = progressSilencePeriod;
     }
 
@@ -255,16 +992,210 @@ public class MiniLogger {
      * @param fileNamePattern the file name pattern to use going forward
      */
     public void setFileNamePattern(String fileNamePattern) {
+        ensureConfigured();
         this.fileNamePattern = fileNamePattern;
+        if (fileNamePattern == null) {
+            this.shardWriter.close();
+        }
+    }
+
+    /**
+     * Limits the number of characters a single parameter takes up in a line going forward. Longer parameters are cut
+     * off and marked as truncated; Strings and other CharSequences, as well as Collections and Maps, are only rendered
+     * up to the limit, so that, e.g., a huge List passed by accident costs no more than the limit. Zero disables the
+     * limit.
+     *
+     * @param maxArgLength the maximum length of a single parameter, or zero
+     */
+    public void setMaxArgLength(int maxArgLength) {
+        ensureConfigured();
+        this.maxArgLength = maxArgLength;
+    }
+
+    /**
+     * Limits the number of characters of a line going forward, including time stamp and Log name, but excluding a
+     * stack trace. Longer lines are cut off and marked as truncated, and parameters beyond the limit are not
+     * rendered at all. Zero disables the limit.
+     *
+     * @param maxLineLength the maximum length of a line, or zero
+     */
+    public void setMaxLineLength(int maxLineLength) {
+        ensureConfigured();
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Updates the number of heavy hitters tracked, i.e. of Log names and patterns accounting for the most lines, see
+     * getHeavyHitters. Lines are counted in a sketch of fixed size, about 100 KB per stripe of threads, which costs a
+     * few uncontended atomic increments per line, suppressed debug lines included. Zero disables tracking. Lines
+     * counted so far are dropped.
+     *
+     * @param heavyHitters the number of heavy hitters to track, or zero
+     */
+    public void setHeavyHitters(int heavyHitters) {
+        ensureConfigured();
+        this.heavyHitters.set(heavyHitters > 0 ? new HeavyHitters(heavyHitters, this.heavyHittersInterval) : null);
+        if (heavyHitters == 0) {
+            this.retiredHeavyHitters.set(null);
+        }
+    }
+
+    /**
+     * Updates the interval after which the heavy hitters are reported, in milliseconds. Zero disables periodic
+     * reports, leaving them to reportHeavyHitters. Lines counted so far are dropped.
+     *
+     * @param heavyHittersInterval the time between two reports, or zero
+     */
+    public void setHeavyHittersInterval(long heavyHittersInterval) {
+        ensureConfigured();
+        this.heavyHittersInterval = heavyHittersInterval;
+        for (HeavyHitters current = this.heavyHitters.get(); current != null; current = this.heavyHitters.get()) {
+            if (this.heavyHitters.compareAndSet(current, new HeavyHitters(current.size(), heavyHittersInterval))) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Enables or disables the caller location going forward. If enabled, every line names the call site it has been
+     * logged from after the Log name, as the simple class name, the method name, and the line number, e.g.
+     * Server.handle:42. Call sites are found by walking only the top frames of the stack and memoized, so that
+     * this costs far less than capturing a stack trace; lines that are suppressed do not pay for it at all. Lines
+     * MiniLogger writes itself, i.e. metric summaries, heavy hitter reports, and flight recorder dumps, have no caller
+     * location.
+     *
+     * @param callerLocation true to name the call site in every line going forward
+     */
+    public void setCallerLocation(boolean callerLocation) {
+        ensureConfigured();
+        this.isCallerLocation = callerLocation;
+    }
+
+    /**
+     * Enables or disables shared appends for files rolled to going forward. If enabled, several processes can log to
+     * the same file name pattern: files are opened in append mode, so that every line, written with a single write,
+     * lands at the end of the file in one piece. Rolling is coordinated via a lock file named .minilogger.lock next to
+     * the log files, which records the file last rolled to per file name pattern and when: a file rolled to is only
+     * truncated if it is rolled to later than the recorded one, i.e. if it is left over from an earlier period rather
+     * than rolled to by another process already. Consequently, a file is appended to rather than truncated as long as
+     * no roll has been recorded for its pattern yet, e.g. the first one ever opened. Shared files are not indexed.
+     *
+     * @param sharedAppend true to share files with other processes going forward
+     */
+    public void setSharedAppend(boolean sharedAppend) {
+        ensureConfigured();
+        this.isSharedAppend = sharedAppend;
+    }
+
+    /**
+     * Enables or disables sharded logging to file. If enabled, every thread appends its lines to a shard of its own
+     * instead of the log file, named like the log file plus ".shard" and a number, so that threads do not wait for
+     * each other to write. Shards roll with the file name pattern. Use ShardedLogReader to read the shards as one log
+     * ordered by time. Shards are neither indexed nor forced to disk by durable logging. Meant for a limited number
+     * of long-lived writer threads, as every thread that logs creates a shard file per rolled file.
+     *
+     * @param sharded true to log to per-thread shards going forward
+     */
+    public void setSharded(boolean sharded) {
+        ensureConfigured();
+        this.isSharded = sharded;
+        if (sharded) {
+            // sharded lines neither roll nor close the file, so close it once here
+            this.writeLock.lock();
+            try {
+                closeFile();
+            } finally {
+                this.writeLock.unlock();
+            }
+        } else {
+            this.shardWriter.close();
+        }
+    }
+
+    /**
+     * Sets the index interval for files rolled to going forward. If positive, a sidecar index named like the log file
+     * plus ".idx" is written next to each log file, recording the offset of the first line of every second and of
+     * every indexInterval-th line within a second. LogRangeReader uses these indexes to read time ranges without
+     * scanning the log files. Zero disables indexing.
+     *
+     * @param indexInterval the maximum number of lines between two index entries, or zero
+     */
+    public void setIndexInterval(int indexInterval) {
+        ensureConfigured();
+        this.indexInterval = indexInterval;
     }
 
     /**
      * Sets the console stream that recieves info, debug, and progress statements. If set to null, console output will
-     * be skipped.
+     * be skipped. Formatted lines are written to the stream as bytes; note that a PrintStream, like System.err, takes
+     * its own monitor on every write.
      *
      * @param consoleStream the console stream to write to going forward, usually System.out or System.err
      */
     public void setConsoleStream(OutputStream consoleStream) {
-        this.consoleStream = consoleStream == null?null:new PrintStream(consoleStream, false);
+        ensureConfigured();
+        this.consoleStream = consoleStream;
+    }
+
+    /**
+     * Sets the address of a log collector to ship info and debug lines to instead of writing them to the file, either
+     * unix: followed by the path of a Unix domain socket, or tcp: followed by host:port. Lines are sent in batches by a
+     * background thread, so logging never blocks on the socket. While the collector is not connected, or cannot keep
+     * up, lines are spilled to the file; lost connections are retried with exponential backoff. Lines sent to the
+     * collector are not written durably. If set to null, pending lines are sent and the connection is closed.
+     *
+     * @param socketAddress the address of the collector to use going forward, or null
+     */
+    public void setSocketAddress(String socketAddress) {
+        ensureConfigured();
+        SocketSink previous = this.socketSink;
+        this.socketSink = socketAddress != null ? newSocketSink(socketAddress) : null;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Enables or disables durable logging. If enabled, info and debug calls return only after their line has been
+     * forced to disk. Concurrent calls share a single force of the file, see setCommitMaxWaitMicros and
+     * setCommitBatchSize.
+     *
+     * @param durable true to wait for lines to be on disk going forward
+     */
+    public void setDurable(boolean durable) {
+        ensureConfigured();
+        this.isDurable = durable;
+    }
+
+    /**
+     * Updates the maximum time, in microseconds, the first caller waiting for durability waits for further lines to
+     * arrive before forcing the file to disk on behalf of all of them.
+     *
+     * @param commitMaxWaitMicros the new batch window
+     */
+    public void setCommitMaxWaitMicros(long commitMaxWaitMicros) {
+        ensureConfigured();
+        this.groupCommitter.setMaxWaitMicros(commitMaxWaitMicros);
+    }
+
+    /**
+     * Updates the number of pending lines that forces the file to disk right away, without waiting for the rest of
+     * the batch window.
+     *
+     * @param commitBatchSize the new maximum number of lines per commit
+     */
+    public void setCommitBatchSize(int commitBatchSize) {
+        ensureConfigured();
+        this.groupCommitter.setBatchSize(commitBatchSize);
+    }
+
+    /**
+     * Returns the latencies of durable info and debug calls waiting for their commit, in microseconds.
+     *
+     * @return a snapshot of the commit latencies, use it to look up percentiles
+     */
+    public Histogram getCommitLatencies() {
+        ensureConfigured();
+        return this.groupCommitter.getLatencies();
     }
 }
@@ -47,6 +47,79 @@ public class MiniLoggerBuilder {
      */
     public static final long DEFAULT_PROGRESS_SILENCE_PERIOD = 250;
 
+    /**
+     * The flag indicating if info and debug calls wait for their line to be on disk by default.
+     */
+    public static final boolean DEFAULT_DURABLE = false;
+
+    /**
+     * The default time a durable call waits for others to share a commit with, in microseconds.
+     */
+    public static final long DEFAULT_COMMIT_MAX_WAIT_MICROS = 1000;
+
+    /**
+     * The default number of pending durable lines that triggers a commit right away.
+     */
+    public static final int DEFAULT_COMMIT_BATCH_SIZE = 64;
+
+    /**
+     * The default maximum number of lines between two entries of the sidecar index of log files; zero disables indexing.
+     */
+    public static final int DEFAULT_INDEX_INTERVAL = 0;
+
+    /**
+     * The default number of suppressed debug messages kept in memory to be dumped on errors; zero disables this.
+     */
+    public static final int DEFAULT_FLIGHT_RECORDER_SIZE = 0;
+
+    /**
+     * The default interval after which recorded metrics are summarized, in milliseconds; zero disables periodic
+     * summaries.
+     */
+    public static final long DEFAULT_METRICS_INTERVAL = 60000;
+
+    /**
+     * The flag indicating if every thread logs to a shard of its own rather than to the shared log file by default.
+     */
+    public static final boolean DEFAULT_SHARDED = false;
+
+    /**
+     * The default address of a log collector to send lines to; null disables sending lines to a collector.
+     */
+    public static final String DEFAULT_SOCKET_ADDRESS = null;
+
+    /**
+     * The flag indicating if log files are shared with other processes logging to the same files by default.
+     */
+    public static final boolean DEFAULT_SHARED_APPEND = false;
+
+    /**
+     * The default maximum number of characters of a single parameter in a line; zero disables the limit.
+     */
+    public static final int DEFAULT_MAX_ARG_LENGTH = 0;
+
+    /**
+     * The default maximum number of characters of a line, excluding stack traces; zero disables the limit.
+     */
+    public static final int DEFAULT_MAX_LINE_LENGTH = 0;
+
+    /**
+     * The flag indicating if lines name the call site they have been logged from by default.
+     */
+    public static final boolean DEFAULT_CALLER_LOCATION = false;
+
+    /**
+     * The default number of heavy hitters, i.e. Log names and patterns accounting for the most lines, to track; zero
+     * disables tracking.
+     */
+    public static final int DEFAULT_HEAVY_HITTERS = 0;
+
+    /**
+     * The default interval after which the heavy hitters are reported, in milliseconds; zero disables periodic
+     * reports.
+     */
+    public static final long DEFAULT_HEAVY_HITTERS_INTERVAL = 60000;
+
     private boolean enableDebug;
     private String timePattern;
     private String separator;
@@ -56,6 +129,20 @@ public class MiniLoggerBuilder {
     private long progressSilencePeriod;
     private Set<String> muteSet;
     private Set<String> focusSet;
+    private boolean durable;
+    private long commitMaxWaitMicros;
+    private int commitBatchSize;
+    private int indexInterval;
+    private int flightRecorderSize;
+    private long metricsInterval;
+    private boolean sharded;
+    private String socketAddress;
+    private boolean sharedAppend;
+    private int maxArgLength;
+    private int maxLineLength;
+    private boolean callerLocation;
+    private int heavyHitters;
+    private long heavyHittersInterval;
 
     /**
      * Reads the default config file ("/minilogger.conf" on class path) and returns a MiniLoggerBuilder instance
@@ -64,9 +151,13 @@ public class MiniLoggerBuilder {
      * @return the MiniLoggerBuilder with config loaded from file, or default config if no file was found
      */
     public static MiniLoggerBuilder fromDefaultConfigFile() {
+        return fromConfigResource("/minilogger.conf");
+    }
+
+    static MiniLoggerBuilder fromConfigResource(String resource) {
         InputStream in = null;
         try {
-            in = MiniLoggerBuilder.class.getResourceAsStream("/minilogger.conf");
+            in = MiniLoggerBuilder.class.getResourceAsStream(resource);
             if (in == null) {
                 return new MiniLoggerBuilder();
             } else {
@@ -108,55 +199,12 @@ public class MiniLoggerBuilder {
                 // ignore lines w/o content
                 if ("".equals(line)) {
                     // ignore empty lines
-                } else if (line.startsWith("timePattern:")) {
-                    String timePattern = line.substring("timePattern:".length()).trim();
-                    if (timePattern.length() == 0) {
-                        builder.withTimePattern(null);
-                    } else {
-                        builder.withTimePattern(timePattern);
-                    }
-                } else if (line.startsWith("separator:")) {
-                    builder.withSeparator(line.substring("separator:".length()).trim());
-                } else if (line.startsWith("debugEnabled:")) {
-                    builder.withDebugEnabled(Boolean.valueOf(line.substring("debugEnabled:".length()).trim()));
-                } else if (line.startsWith("logNameLength:")) {
-                    builder.withLogNameLength(Integer.parseInt(line.substring("logNameLength:".length()).trim()));
-                } else if (line.startsWith("progressSilencePeriod:")) {
-                    builder.withProgressSilencePeriod(Long.parseLong(line.substring("progressSilencePeriod:".length()).trim()));
-                } else if (line.startsWith("muteSet:")) {
-                    HashSet<String> muteSet = new HashSet<String>();
-                    String mutes = line.substring("muteSet:".length()).trim();
-                    if (mutes.length() > 0) {
-                        Collections.addAll(muteSet, mutes.split(","));
-                    }
-                    builder.withMuteSet(muteSet);
-                } else if (line.startsWith("focusSet:")) {
-                    HashSet<String> focusSet = new HashSet<String>();
-                    String focuses = line.substring("focusSet:".length()).trim();
-                    if (focuses.length() > 0) {
-                        Collections.addAll(focusSet, focuses.split(","));
-                    }
-                    builder.withFocusSet(focusSet);
-                } else if (line.startsWith("file:")) {
-                    String fileName = line.substring("file:".length()).trim();
-                    if (fileName.length() > 0) {
-                        builder.withFileNamePattern(fileName);
-                    } else {
-                        builder.withFileNamePattern(null);
-                    }
-                } else if (line.startsWith("console:")) {
-                    String console = line.substring("console:".length()).trim();
-                    if ("".equals(console)) {
-                        builder.withConsoleStream(null);
-                    } else if ("out".equalsIgnoreCase(console)) {
-                        builder.withConsoleStream(System.out);
-                    } else if ("err".equalsIgnoreCase(console)) {
-                        builder.withConsoleStream(System.err);
-                    } else {
-                        throw new IllegalArgumentException("Unexpected console defined, expected 'out' or 'err', but got " + console);
-                    }
                 } else {
-                    throw new IllegalArgumentException("Cannot parse config file line '" + line + "'!");
+                    int colon = line.indexOf(':');
+                    if (colon < 0) {
+                        throw new IllegalArgumentException("Cannot parse config file line '" + line + "'!");
+                    }
+                    builder.withConfigValue(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
                 }
             }
 
@@ -166,6 +214,95 @@ public class MiniLoggerBuilder {
         }
     }
 
+    /**
+     * Applies a single config value, as read from a config file line key: value.
+     *
+     * @param key the config key, e.g. timePattern
+     * @param value the config value, trimmed
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    MiniLoggerBuilder withConfigValue(String key, String value) {
+        if ("timePattern".equals(key)) {
+            if (value.length() == 0) {
+                this.withTimePattern(null);
+            } else {
+                this.withTimePattern(value);
+            }
+        } else if ("separator".equals(key)) {
+            this.withSeparator(value);
+        } else if ("debugEnabled".equals(key)) {
+            this.withDebugEnabled(Boolean.valueOf(value));
+        } else if ("logNameLength".equals(key)) {
+            this.withLogNameLength(Integer.parseInt(value));
+        } else if ("progressSilencePeriod".equals(key)) {
+            this.withProgressSilencePeriod(Long.parseLong(value));
+        } else if ("muteSet".equals(key)) {
+            HashSet<String> muteSet = new HashSet<String>();
+            if (value.length() > 0) {
+                Collections.addAll(muteSet, value.split(","));
+            }
+            this.withMuteSet(muteSet);
+        } else if ("focusSet".equals(key)) {
+            HashSet<String> focusSet = new HashSet<String>();
+            if (value.length() > 0) {
+                Collections.addAll(focusSet, value.split(","));
+            }
+            this.withFocusSet(focusSet);
+        } else if ("durable".equals(key)) {
+            this.withDurable(Boolean.valueOf(value));
+        } else if ("commitMaxWaitMicros".equals(key)) {
+            this.withCommitMaxWaitMicros(Long.parseLong(value));
+        } else if ("commitBatchSize".equals(key)) {
+            this.withCommitBatchSize(Integer.parseInt(value));
+        } else if ("indexInterval".equals(key)) {
+            this.withIndexInterval(Integer.parseInt(value));
+        } else if ("flightRecorderSize".equals(key)) {
+            this.withFlightRecorderSize(Integer.parseInt(value));
+        } else if ("metricsInterval".equals(key)) {
+            this.withMetricsInterval(Long.parseLong(value));
+        } else if ("sharded".equals(key)) {
+            this.withSharded(Boolean.valueOf(value));
+        } else if ("socket".equals(key)) {
+            if (value.length() > 0) {
+                SocketSink.parseAddress(value);
+                this.withSocketAddress(value);
+            } else {
+                this.withSocketAddress(null);
+            }
+        } else if ("sharedAppend".equals(key)) {
+            this.withSharedAppend(Boolean.valueOf(value));
+        } else if ("maxArgLength".equals(key)) {
+            this.withMaxArgLength(Integer.parseInt(value));
+        } else if ("maxLineLength".equals(key)) {
+            this.withMaxLineLength(Integer.parseInt(value));
+        } else if ("callerLocation".equals(key)) {
+            this.withCallerLocation(Boolean.valueOf(value));
+        } else if ("heavyHitters".equals(key)) {
+            this.withHeavyHitters(Integer.parseInt(value));
+        } else if ("heavyHittersInterval".equals(key)) {
+            this.withHeavyHittersInterval(Long.parseLong(value));
+        } else if ("file".equals(key)) {
+            if (value.length() > 0) {
+                this.withFileNamePattern(value);
+            } else {
+                this.withFileNamePattern(null);
+            }
+        } else if ("console".equals(key)) {
+            if ("".equals(value)) {
+                this.withConsoleStream(null);
+            } else if ("out".equalsIgnoreCase(value)) {
+                this.withConsoleStream(System.out);
+            } else if ("err".equalsIgnoreCase(value)) {
+                this.withConsoleStream(System.err);
+            } else {
+                throw new IllegalArgumentException("Unexpected console defined, expected 'out' or 'err', but got " + value);
+            }
+        } else {
+            throw new IllegalArgumentException("Unexpected config key '" + key + "'!");
+        }
+        return this;
+    }
+
     /**
      * Creates a MiniLoggerBuilder with default values, ready to be adopted to your needs.
      */
@@ -178,7 +315,21 @@ public class MiniLoggerBuilder {
             .withFocusSet(new HashSet<String>())
             .withFileNamePattern(DEFAULT_LOG_FILE_PATTERN)
             .withConsoleStream(DEFAULT_LOG_CONSOLE)
-            .withProgressSilencePeriod(DEFAULT_PROGRESS_SILENCE_PERIOD);
+            .withProgressSilencePeriod(DEFAULT_PROGRESS_SILENCE_PERIOD)
+            .withDurable(DEFAULT_DURABLE)
+            .withCommitMaxWaitMicros(DEFAULT_COMMIT_MAX_WAIT_MICROS)
+            .withCommitBatchSize(DEFAULT_COMMIT_BATCH_SIZE)
+            .withIndexInterval(DEFAULT_INDEX_INTERVAL)
+            .withFlightRecorderSize(DEFAULT_FLIGHT_RECORDER_SIZE)
+            .withMetricsInterval(DEFAULT_METRICS_INTERVAL)
+            .withSharded(DEFAULT_SHARDED)
+            .withSocketAddress(DEFAULT_SOCKET_ADDRESS)
+            .withSharedAppend(DEFAULT_SHARED_APPEND)
+            .withMaxArgLength(DEFAULT_MAX_ARG_LENGTH)
+            .withMaxLineLength(DEFAULT_MAX_LINE_LENGTH)
+            .withCallerLocation(DEFAULT_CALLER_LOCATION)
+            .withHeavyHitters(DEFAULT_HEAVY_HITTERS)
+            .withHeavyHittersInterval(DEFAULT_HEAVY_HITTERS_INTERVAL);
     }
 
     /**
@@ -196,7 +347,74 @@ public class MiniLoggerBuilder {
                 this.consoleStream,
                 this.progressSilencePeriod,
                 this.muteSet,
-                this.focusSet);
+                this.focusSet,
+                this.durable,
+                this.commitMaxWaitMicros,
+                this.commitBatchSize,
+                this.indexInterval,
+                this.flightRecorderSize,
+                this.metricsInterval,
+                this.sharded,
+                this.socketAddress,
+                this.sharedAppend,
+                this.maxArgLength,
+                this.maxLineLength,
+                this.callerLocation,
+                this.heavyHitters,
+                this.heavyHittersInterval);
+    }
+
+    /**
+     * Applies the parameters set on this builder to an existing MiniLogger, via its setters.
+     */
+    void configure(MiniLogger miniLogger) {
+        if (this.enableDebug) {
+            miniLogger.enableDebug();
+        } else {
+            miniLogger.disableDebug();
+        }
+        miniLogger.setTimePattern(this.timePattern);
+        miniLogger.setSeparator(this.separator);
+        miniLogger.setLogNameLength(this.logNameLength);
+        for (String name : this.muteSet) {
+            miniLogger.mute(name);
+        }
+        for (String name : this.focusSet) {
+            miniLogger.focus(name);
+        }
+        miniLogger.setFileNamePattern(this.fileNamePattern);
+        miniLogger.setConsoleStream(this.consoleStream);
+        miniLogger.setProgressSilencePeriod(this.progressSilencePeriod);
+        miniLogger.setDurable(this.durable);
+        miniLogger.setCommitMaxWaitMicros(this.commitMaxWaitMicros);
+        miniLogger.setCommitBatchSize(this.commitBatchSize);
+        miniLogger.setIndexInterval(this.indexInterval);
+        miniLogger.setFlightRecorderSize(this.flightRecorderSize);
+        miniLogger.setMetricsInterval(this.metricsInterval);
+        miniLogger.setSharded(this.sharded);
+        miniLogger.setSharedAppend(this.sharedAppend);
+        miniLogger.setSocketAddress(this.socketAddress);
+        miniLogger.setMaxArgLength(this.maxArgLength);
+        miniLogger.setMaxLineLength(this.maxLineLength);
+        miniLogger.setCallerLocation(this.callerLocation);
+        miniLogger.setHeavyHittersInterval(this.heavyHittersInterval);
+        miniLogger.setHeavyHitters(this.heavyHitters);
+    }
+
+    String getFileNamePattern() {
+        return this.fileNamePattern;
+    }
+
+    String getTimePattern() {
+        return this.timePattern;
+    }
+
+    String getSeparator() {
+        return this.separator;
+    }
+
+    int getLogNameLength() {
+        return this.logNameLength;
     }
 
     /**
@@ -305,4 +523,177 @@ public class MiniLoggerBuilder {
         this.logNameLength = logNameLength;
         return this;
     }
+
+    /**
+     * Specifies whether info and debug calls of the MiniLogger created from this builder return only after their line
+     * has been forced to disk. Concurrent calls share a single commit.
+     *
+     * @param durable true to wait for lines to be on disk
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    public MiniLoggerBuilder withDurable(boolean durable) {
+        this.durable = durable;
+        return this;
+    }
+
+    /**
+     * Specifies the maximum time, in microseconds, a durable call waits for other lines to share a commit with.
+     *
+     * @param commitMaxWaitMicros the batch window for durable calls
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    public MiniLoggerBuilder withCommitMaxWaitMicros(long commitMaxWaitMicros) {
+        this.commitMaxWaitMicros = commitMaxWaitMicros;
+        return this;
+    }
+
+    /**
+     * Specifies the number of pending durable lines that triggers a commit without waiting for the batch window to
+     * pass.
+     *
+     * @param commitBatchSize the maximum number of lines per commit
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    public MiniLoggerBuilder withCommitBatchSize(int commitBatchSize) {
+        this.commitBatchSize = commitBatchSize;
+        return this;
+    }
+
+    /**
+     * Specifies the maximum number of lines between two entries of the sidecar index the MiniLogger created from this
+     * builder writes next to every log file. An entry is also written for the first line of every second. Zero
+     * disables indexing.
+     *
+     * @param indexInterval the maximum number of lines between two index entries, or zero
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    public MiniLoggerBuilder withIndexInterval(int indexInterval) {
+        this.indexInterval = indexInterval;
+        return this;
+    }
+
+    /**
+     * Specifies the number of most recent suppressed debug messages the MiniLogger created from this builder keeps in
+     * memory, unformatted, to write them when an info message with a Throwable is logged or dump is called. Zero
+     * disables the flight recorder.
+     *
+     * @param flightRecorderSize the number of suppressed debug messages to keep, or zero
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    public MiniLoggerBuilder withFlightRecorderSize(int flightRecorderSize) {
+        this.flightRecorderSize = flightRecorderSize;
+        return this;
+    }
+
+    /**
+     * Specifies the interval after which the MiniLogger created from this builder writes a summary line per metric
+     * recorded via Log.record or Log.timer, in milliseconds. Zero disables periodic summaries, so that they are only
+     * written by MiniLogger.flushMetrics.
+     *
+     * @param metricsInterval the time between two summaries, or zero
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    public MiniLoggerBuilder withMetricsInterval(long metricsInterval) {
+        this.metricsInterval = metricsInterval;
+        return this;
+    }
+
+    /**
+     * Specifies whether every thread logging through the MiniLogger created from this builder appends to a shard of
+     * its own, named like the log file plus ".shard" and a number, instead of to the shared log file. Use
+     * ShardedLogReader to read the shards as one log ordered by time.
+     *
+     * @param sharded true to log to per-thread shards
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    public MiniLoggerBuilder withSharded(boolean sharded) {
+        this.sharded = sharded;
+        return this;
+    }
+
+    /**
+     * Specifies the address of a log collector the MiniLogger created from this builder ships info and debug lines to,
+     * instead of writing them to the file: unix: followed by the path of a Unix domain socket, or tcp: followed by
+     * host:port, e.g. tcp:localhost:5170. While the collector is not connected, lines are spilled to the file.
+     *
+     * @param socketAddress the address of the collector, or null to write to the file only
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    public MiniLoggerBuilder withSocketAddress(String socketAddress) {
+        this.socketAddress = socketAddress;
+        return this;
+    }
+
+    /**
+     * Specifies whether the MiniLogger created from this builder shares its log files with other processes logging to
+     * the same file name pattern, appending every line in one piece and coordinating rolls via a lock file, see
+     * MiniLogger.setSharedAppend.
+     *
+     * @param sharedAppend true to share log files with other processes
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    public MiniLoggerBuilder withSharedAppend(boolean sharedAppend) {
+        this.sharedAppend = sharedAppend;
+        return this;
+    }
+
+    /**
+     * Specifies the maximum number of characters a single parameter takes up in a line logged by the MiniLogger
+     * created from this builder. Longer parameters are cut off and marked as truncated. Zero disables the limit.
+     *
+     * @param maxArgLength the maximum length of a single parameter, or zero
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    public MiniLoggerBuilder withMaxArgLength(int maxArgLength) {
+        this.maxArgLength = maxArgLength;
+        return this;
+    }
+
+    /**
+     * Specifies the maximum number of characters of a line logged by the MiniLogger created from this builder,
+     * excluding stack traces. Longer lines are cut off and marked as truncated. Zero disables the limit.
+     *
+     * @param maxLineLength the maximum length of a line, or zero
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    public MiniLoggerBuilder withMaxLineLength(int maxLineLength) {
+        this.maxLineLength = maxLineLength;
+        return this;
+    }
+
+    /**
+     * Specifies whether lines logged by the MiniLogger created from this builder name the call site they have been
+     * logged from, e.g. Server.handle:42, see MiniLogger.setCallerLocation.
+     *
+     * @param callerLocation true to name the call site in every line
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    public MiniLoggerBuilder withCallerLocation(boolean callerLocation) {
+        this.callerLocation = callerLocation;
+        return this;
+    }
+
+    /**
+     * Specifies the number of heavy hitters, i.e. Log names and patterns accounting for the most lines, tracked by
+     * the MiniLogger created from this builder, see MiniLogger.setHeavyHitters. Zero disables tracking.
+     *
+     * @param heavyHitters the number of heavy hitters to track, or zero
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    public MiniLoggerBuilder withHeavyHitters(int heavyHitters) {
+        this.heavyHitters = heavyHitters;
+        return this;
+    }
+
+    /**
+     * Specifies the interval after which the MiniLogger created from this builder reports its heavy hitters, in
+     * milliseconds. Zero disables periodic reports.
+     *
+     * @param heavyHittersInterval the time between two reports, or zero
+     * @return this MiniLoggerBuilder, for further configuration
+     */
+    public MiniLoggerBuilder withHeavyHittersInterval(long heavyHittersInterval) {
+        this.heavyHittersInterval = heavyHittersInterval;
+        return this;
+    }
 }
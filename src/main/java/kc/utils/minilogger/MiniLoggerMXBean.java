@@ -0,0 +1,23 @@
+package kc.utils.minilogger;
+
+/**
+ * The operations of a MiniLogger exposed via JMX, see MiniLogger.registerMBean.
+ */
+public interface MiniLoggerMXBean {
+
+    /**
+     * Formats and writes all debug messages kept by the flight recorder and clears it.
+     */
+    void dump();
+
+    /**
+     * Writes a summary line per metric recorded since the last summary and starts a new interval.
+     */
+    void flushMetrics();
+
+    /**
+     * Writes a line per Log name and pattern accounting for the most lines since the last report and starts a new
+     * interval.
+     */
+    void reportHeavyHitters();
+}
@@ -0,0 +1,78 @@
+package kc.utils.minilogger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the files a file name pattern, as given to MiniLogger, has rolled to. Only the file name part of the pattern
+ * may contain format specifiers, the directory part is taken literally.
+ */
+final class RolledFiles {
+
+    private static final Pattern SPECIFIER = Pattern.compile("%(\\d+\\$|<)?[-#+ 0,(]*(\\d+)?(\\.\\d+)?([tT]?)([a-zA-Z%])");
+
+    private RolledFiles() {
+    }
+
+    /**
+     * @param fileNamePattern the file name pattern used for logging
+     * @return the existing files matching the pattern, sorted by name
+     */
+    static List<File> expand(String fileNamePattern) {
+        File patternFile = new File(fileNamePattern);
+        File directory = patternFile.getAbsoluteFile().getParentFile();
+        Pattern fileNameRegex = toRegex(patternFile.getName());
+
+        List<File> files = new ArrayList<File>();
+        String[] names = directory.list();
+        if (names != null) {
+            Arrays.sort(names);
+            for (String name : names) {
+                File file = new File(patternFile.getParentFile(), name);
+                if (fileNameRegex.matcher(name).matches() && file.isFile()) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    static Pattern toRegex(String fileNamePattern) {
+        StringBuilder regex = new StringBuilder();
+        Matcher matcher = SPECIFIER.matcher(fileNamePattern);
+        int last = 0;
+        while (matcher.find()) {
+            regex.append(Pattern.quote(fileNamePattern.substring(last, matcher.start())));
+            regex.append(toRegex(matcher.group(4).length() > 0, matcher.group(5).charAt(0)));
+            last = matcher.end();
+        }
+        regex.append(Pattern.quote(fileNamePattern.substring(last)));
+        return Pattern.compile(regex.toString());
+    }
+
+    private static String toRegex(boolean isTime, char conversion) {
+        if (conversion == '%') {
+            return "%";
+        } else if (!isTime) {
+            return ".+";
+        }
+        switch (conversion) {
+            case 'B': case 'b': case 'h': case 'A': case 'a': case 'p': case 'Z':
+                return "[A-Za-z]+";
+            case 'z':
+                return "[-+][0-9]{4}";
+            case 'F': case 'D':
+                return "[0-9-]+";
+            case 'T': case 'R':
+                return "[0-9:]+";
+            case 'c': case 'r':
+                return ".+";
+            default:
+                return "[0-9]+";
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package kc.utils.minilogger;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes lines to per-thread shards of the current log file, so that threads writing to the file do not wait for
+ * each other. Every thread appends to its own file, named like the log file followed by .shard and a number, which
+ * the thread keeps across rolls. Each line is framed with its time stamp and length, see ShardedLogReader, which
+ * merges the shards back into a single ordered log.
+ *
+ * A shard is guarded by a lock of its own, which is only contended while a roll closes shards still open on the
+ * previous file. Shards of threads that have died are closed when the file is rolled or a new shard is opened.
+ */
+class ShardWriter {
+
+    static final String SUFFIX = ".shard";
+
+    private class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Thread owner = Thread.currentThread();
+        private final int number = ShardWriter.this.lastShardNumber.incrementAndGet();
+        private FileOutputStream stream = null;
+        private String fileName = null;
+        private String lastOpenedFileName = null;
+
+        // must be called holding the lock
+        private void open(String fileName) {
+            String shardName = fileName + SUFFIX + this.number;
+            try {
+                // a shard file is only ever written by this shard, so continue it if it has been closed by a roll
+                this.stream = new FileOutputStream(shardName, fileName.equals(this.lastOpenedFileName));
+            } catch (FileNotFoundException e) {
+                throw new RuntimeException("cannot log to " + shardName + "!", e);
+            }
+            this.fileName = fileName;
+            this.lastOpenedFileName = fileName;
+        }
+
+        // must be called holding the lock
+        private void close() {
+            if (this.stream != null) {
+                try {
+                    this.stream.close();
+                } catch (IOException e) {
+                    // ignore this, the shard is not written to anymore
+                }
+            }
+            this.stream = null;
+            this.fileName = null;
+        }
+    }
+
+    private final ThreadLocal<Shard> threadShard = new ThreadLocal<Shard>() {
+        @Override
+        protected Shard initialValue() {
+            Shard shard = new Shard();
+            register(shard);
+            return shard;
+        }
+    };
+
+    private final AtomicInteger lastShardNumber = new AtomicInteger();
+
+    // guards the list of shards and rolls
+    private final ReentrantLock shardsLock = new ReentrantLock();
+    private final List<Shard> shards = new ArrayList<Shard>();
+    private volatile String currentFileName = null;
+
+    /**
+     * Appends a framed line to the calling threads shard of the given log file.
+     *
+     * @param fileName the name of the log file the line belongs to
+     * @param millis the time stamp of the line
+     * @param lineBytes the line, including its line separator
+     * @return true if this call rolled the shards to a new log file
+     */
+    boolean write(String fileName, long millis, byte[] lineBytes) {
+        boolean isRolled = false;
+        if (!fileName.equals(this.currentFileName)) {
+            isRolled = roll(fileName);
+        }
+
+        byte[] header = (millis + " " + lineBytes.length + " ").getBytes(StandardCharsets.US_ASCII);
+        byte[] record = new byte[header.length + lineBytes.length];
+        System.arraycopy(header, 0, record, 0, header.length);
+        System.arraycopy(lineBytes, 0, record, header.length, lineBytes.length);
+
+        Shard shard = this.threadShard.get();
+        shard.lock.lock();
+        try {
+            if (!fileName.equals(shard.fileName)) {
+                shard.close();
+                shard.open(fileName);
+            }
+            shard.stream.write(record);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot log to " + fileName + SUFFIX + shard.number + "!", e);
+        } finally {
+            shard.lock.unlock();
+        }
+        return isRolled;
+    }
+
+    /**
+     * Closes all shards, e.g. when sharding is disabled or the log file is unset.
+     */
+    void close() {
+        this.shardsLock.lock();
+        try {
+            for (Shard shard : this.shards) {
+                shard.lock.lock();
+                try {
+                    shard.close();
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+            this.currentFileName = null;
+        } finally {
+            this.shardsLock.unlock();
+        }
+    }
+
+    int openShardCount() {
+        this.shardsLock.lock();
+        try {
+            int count = 0;
+            for (Shard shard : this.shards) {
+                if (shard.fileName != null) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            this.shardsLock.unlock();
+        }
+    }
+
+    private void register(Shard shard) {
+        this.shardsLock.lock();
+        try {
+            closeDeadShards();
+            this.shards.add(shard);
+        } finally {
+            this.shardsLock.unlock();
+        }
+    }
+
+    // closes shards still open on a previous file, returns false if another thread rolled to the file first
+    private boolean roll(String fileName) {
+        this.shardsLock.lock();
+        try {
+            if (fileName.equals(this.currentFileName)) {
+                return false;
+            }
+            this.currentFileName = fileName;
+            closeDeadShards();
+            for (Shard shard : this.shards) {
+                shard.lock.lock();
+                try {
+                    if (shard.fileName != null && !shard.fileName.equals(fileName)) {
+                        shard.close();
+                    }
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+            return true;
+        } finally {
+            this.shardsLock.unlock();
+        }
+    }
+
+    // must be called holding the shardsLock
+    private void closeDeadShards() {
+        for (Iterator<Shard> iterator = this.shards.iterator(); iterator.hasNext(); ) {
+            Shard shard = iterator.next();
+            if (!shard.owner.isAlive()) {
+                shard.lock.lock();
+                try {
+                    shard.close();
+                } finally {
+                    shard.lock.unlock();
+                }
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package kc.utils.minilogger;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Presents the shards written by a sharded MiniLogger as a single log ordered by time. The shards of each rolled
+ * file are merged with a k-way merge that keeps only one buffered record header per shard in memory and streams the
+ * lines themselves, so that memory use does not depend on the size of the files. Rolled files are merged one after
+ * the other, ordered by their first time stamp. Lines with equal time stamps are ordered by shard number.
+ */
+public class ShardedLogReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String fileNamePattern;
+
+    /**
+     * Creates a reader for the shards of the files the given pattern has rolled to.
+     *
+     * @param fileNamePattern the file name pattern used for logging, e.g. the file parameter of minilogger.conf
+     */
+    public ShardedLogReader(String fileNamePattern) {
+        this.fileNamePattern = fileNamePattern;
+    }
+
+    /**
+     * Copies all lines from all shards to the given stream, ordered by time.
+     *
+     * @param out the stream to copy lines to
+     * @return the number of lines copied
+     * @throws IOException if reading the shards or writing to the stream fails
+     */
+    public long copyMerged(OutputStream out) throws IOException {
+        // group the shards by the file they belong to
+        Map<String, List<File>> shardsByFileName = new TreeMap<String, List<File>>();
+        for (File shard : RolledFiles.expand(this.fileNamePattern + ShardWriter.SUFFIX + "%d")) {
+            String name = shard.getPath();
+            if (shardNumber(shard) < 0) {
+                continue;
+            }
+            String fileName = name.substring(0, name.lastIndexOf(ShardWriter.SUFFIX));
+            List<File> shards = shardsByFileName.get(fileName);
+            if (shards == null) {
+                shards = new ArrayList<File>();
+                shardsByFileName.put(fileName, shards);
+            }
+            shards.add(shard);
+        }
+
+        final Map<List<File>, Long> firstMillis = new IdentityHashMap<List<File>, Long>();
+        List<List<File>> groups = new ArrayList<List<File>>(shardsByFileName.values());
+        for (List<File> shards : groups) {
+            firstMillis.put(shards, firstMillis(shards));
+        }
+        Collections.sort(groups, new Comparator<List<File>>() {
+            @Override
+            public int compare(List<File> a, List<File> b) {
+                return Long.compare(firstMillis.get(a), firstMillis.get(b));
+            }
+        });
+
+        long copied = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (List<File> shards : groups) {
+            copied += merge(shards, out, buffer);
+        }
+        out.flush();
+        return copied;
+    }
+
+    private static long firstMillis(List<File> shards) throws IOException {
+        long first = Long.MAX_VALUE;
+        for (File shard : shards) {
+            ShardCursor cursor = new ShardCursor(shard);
+            try {
+                if (cursor.next()) {
+                    first = Math.min(first, cursor.millis);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return first;
+    }
+
+    private static long merge(List<File> shards, OutputStream out, byte[] buffer) throws IOException {
+        PriorityQueue<ShardCursor> queue = new PriorityQueue<ShardCursor>(Math.max(1, shards.size()), new Comparator<ShardCursor>() {
+            @Override
+            public int compare(ShardCursor a, ShardCursor b) {
+                int byMillis = Long.compare(a.millis, b.millis);
+                return byMillis != 0 ? byMillis : Integer.compare(a.number, b.number);
+            }
+        });
+
+        long copied = 0;
+        try {
+            for (File shard : shards) {
+                ShardCursor cursor = new ShardCursor(shard);
+                if (cursor.next()) {
+                    queue.add(cursor);
+                } else {
+                    cursor.close();
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                ShardCursor cursor = queue.poll();
+                cursor.copyTo(out, buffer);
+                copied++;
+                if (cursor.next()) {
+                    queue.add(cursor);
+                } else {
+                    cursor.close();
+                }
+            }
+        } finally {
+            for (ShardCursor cursor : queue) {
+                cursor.close();
+            }
+        }
+        return copied;
+    }
+
+    static int shardNumber(File shard) {
+        String name = shard.getName();
+        String number = name.substring(name.lastIndexOf(ShardWriter.SUFFIX) + ShardWriter.SUFFIX.length());
+        try {
+            return number.length() > 0 && number.length() < 10 ? Integer.parseInt(number) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // reads the records of a shard, each one a time stamp and a length in ASCII digits, followed by the line
+    private static class ShardCursor {
+        private final InputStream in;
+        private final int number;
+        private long millis;
+        private long length;
+
+        ShardCursor(File shard) throws IOException {
+            this.in = new BufferedInputStream(new FileInputStream(shard), BUFFER_SIZE);
+            this.number = shardNumber(shard);
+        }
+
+        // reads the next record header, returns false at the end of the shard or at a truncated record
+        boolean next() throws IOException {
+            long millis = readNumber();
+            long length = millis < 0 ? -1 : readNumber();
+            if (length < 0) {
+                return false;
+            }
+            this.millis = millis;
+            this.length = length;
+            return true;
+        }
+
+        void copyTo(OutputStream out, byte[] buffer) throws IOException {
+            long remaining = this.length;
+            while (remaining > 0) {
+                int read = this.in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    // the last record has been cut off, e.g. by a crash, copy what is there
+                    break;
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+
+        private long readNumber() throws IOException {
+            long number = 0;
+            int digits = 0;
+            for (int c = this.in.read(); c != ' '; c = this.in.read()) {
+                if (c < '0' || c > '9' || digits++ > 18) {
+                    return -1;
+                }
+                number = number * 10 + (c - '0');
+            }
+            return digits > 0 ? number : -1;
+        }
+
+        void close() {
+            try {
+                this.in.close();
+            } catch (IOException e) {
+                // ignore this, the shard has been read
+            }
+        }
+    }
+
+    /**
+     * Prints the lines of all shards to stdout, ordered by time.
+     *
+     * Usage: ShardedLogReader fileNamePattern
+     *
+     * @param args the file name pattern
+     * @throws IOException if reading the shards fails
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: ShardedLogReader fileNamePattern, e.g. 'logs/log-%tF.txt'");
+            System.exit(1);
+        }
+
+        new ShardedLogReader(args[0]).copyMerged(System.out);
+    }
+}
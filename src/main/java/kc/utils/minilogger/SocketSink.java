@@ -0,0 +1,233 @@
+package kc.utils.minilogger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ships lines to a log collector over a Unix domain socket or TCP. Logging threads only offer their lines to a
+ * bounded queue, which never blocks; a daemon thread takes them from the queue and writes as many as are pending,
+ * up to MAX_BATCH_SIZE, with a single gathering write. While the collector is not connected, or the queue is full,
+ * lines are spilled to the log file instead. Lost connections are retried with exponential backoff; the lines of a
+ * batch that failed to be written are spilled, so a line may reach both the collector and the file.
+ *
+ * Writes do not block: a collector that takes no bytes for the write timeout is treated like a lost connection, so
+ * that neither the sender thread nor close hang on a stuck collector. Lines offered while or after the sink is closed
+ * are either sent, spilled, or refused, but never dropped.
+ */
+class SocketSink {
+
+    /**
+     * Receives the lines that could not be sent to the collector.
+     */
+    interface Spill {
+        void spill(byte[] lineBytes);
+    }
+
+    static final int QUEUE_CAPACITY = 8192;
+    static final int MAX_BATCH_SIZE = 256;
+    static final long MIN_BACKOFF_MILLIS = 100;
+    static final long MAX_BACKOFF_MILLIS = 10000;
+    static final long DEFAULT_WRITE_TIMEOUT_MILLIS = 5000;
+
+    private final SocketAddress address;
+    private final Spill spill;
+    private final long writeTimeoutMillis;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(QUEUE_CAPACITY);
+    private final Thread sender;
+    private volatile boolean isConnected = false;
+    private volatile boolean isClosed = false;
+    private final CountDownLatch closing = new CountDownLatch(1);
+
+    SocketSink(String address, Spill spill) {
+        this(address, spill, DEFAULT_WRITE_TIMEOUT_MILLIS);
+    }
+
+    SocketSink(String address, Spill spill, long writeTimeoutMillis) {
+        this.address = parseAddress(address);
+        this.spill = spill;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.sender = new Thread("MiniLogger socket sink " + address) {
+            @Override
+            public void run() {
+                send();
+            }
+        };
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    /**
+     * Parses a collector address, either unix: followed by a socket file path or tcp: followed by host:port.
+     */
+    static SocketAddress parseAddress(String address) {
+        if (address.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(address.substring("unix:".length()));
+        } else if (address.startsWith("tcp:")) {
+            String hostAndPort = address.substring("tcp:".length());
+            int colon = hostAndPort.lastIndexOf(':');
+            if (colon > 0) {
+                return new InetSocketAddress(hostAndPort.substring(0, colon), Integer.parseInt(hostAndPort.substring(colon + 1)));
+            }
+        }
+        throw new IllegalArgumentException("Unexpected socket address, expected 'unix:<path>' or 'tcp:<host>:<port>', but got " + address);
+    }
+
+    /**
+     * Hands a line to the sender thread without blocking.
+     *
+     * @param lineBytes the line, including its line separator
+     * @return false if the line has not been taken, because the collector is not connected, the queue is full, or
+     * the sink has been closed
+     */
+    boolean offer(byte[] lineBytes) {
+        if (!this.isConnected || !this.queue.offer(lineBytes)) {
+            return false;
+        }
+        // the queue may have been drained for the last time already, take the line back unless it has been taken
+        return !this.isClosed || !this.queue.remove(lineBytes);
+    }
+
+    /**
+     * Stops the sender thread, after it has sent or spilled all pending lines. Waits for about twice the write
+     * timeout at most; lines the sender has not taken by then are spilled by the calling thread.
+     */
+    void close() {
+        this.isClosed = true;
+        this.closing.countDown();
+        try {
+            this.sender.join(this.writeTimeoutMillis);
+            if (this.sender.isAlive()) {
+                // a collector taking bytes, but too slowly; interrupting makes the write fail and spill
+                this.sender.interrupt();
+                this.sender.join(this.writeTimeoutMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        spillPending();
+    }
+
+    boolean isConnected() {
+        return this.isConnected;
+    }
+
+    private void send() {
+        long backoff = MIN_BACKOFF_MILLIS;
+        List<byte[]> batch = new ArrayList<byte[]>(MAX_BATCH_SIZE);
+        ByteBuffer[] buffers = new ByteBuffer[MAX_BATCH_SIZE];
+
+        while (!this.isClosed) {
+            SocketChannel channel = connect();
+            if (channel == null) {
+                try {
+                    this.closing.await(backoff, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                backoff = Math.min(MAX_BACKOFF_MILLIS, 2 * backoff);
+                continue;
+            }
+
+            backoff = MIN_BACKOFF_MILLIS;
+            this.isConnected = true;
+            Selector selector = null;
+            try {
+                channel.configureBlocking(false);
+                selector = Selector.open();
+                channel.register(selector, SelectionKey.OP_WRITE);
+                while (!this.isClosed || !this.queue.isEmpty()) {
+                    byte[] first;
+                    try {
+                        first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                    if (first == null) {
+                        continue;
+                    }
+
+                    batch.add(first);
+                    this.queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    for (int i = 0; i < batch.size(); i++) {
+                        buffers[i] = ByteBuffer.wrap(batch.get(i));
+                    }
+                    for (int i = 0; i < batch.size(); i = skipWritten(buffers, i, batch.size())) {
+                        // wait for the collector to take bytes if it has not taken any, but not forever
+                        if (channel.write(buffers, i, batch.size() - i) == 0 && selector.select(this.writeTimeoutMillis) == 0) {
+                            throw new IOException("cannot write to " + this.address + " within " + this.writeTimeoutMillis + " ms");
+                        }
+                        selector.selectedKeys().clear();
+                    }
+                    batch.clear();
+                }
+            } catch (IOException e) {
+                // connection lost, spill the lines not written completely and reconnect
+                for (int i = 0; i < batch.size(); i++) {
+                    if (buffers[i].hasRemaining()) {
+                        this.spill.spill(batch.get(i));
+                    }
+                }
+                batch.clear();
+            } finally {
+                this.isConnected = false;
+                try {
+                    if (selector != null) {
+                        selector.close();
+                    }
+                    channel.close();
+                } catch (IOException e) {
+                    // ignore this, the channel is not used anymore
+                }
+            }
+            spillPending();
+        }
+        spillPending();
+    }
+
+    private SocketChannel connect() {
+        SocketChannel channel = null;
+        try {
+            channel = this.address instanceof UnixDomainSocketAddress
+                      ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                      : SocketChannel.open();
+            channel.connect(this.address);
+            return channel;
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException closeException) {
+                    // ignore this, the channel is not used anymore
+                }
+            }
+            return null;
+        }
+    }
+
+    // lines offered right before the connection was lost or the sink was closed go to the spill as well
+    private void spillPending() {
+        for (byte[] lineBytes = this.queue.poll(); lineBytes != null; lineBytes = this.queue.poll()) {
+            this.spill.spill(lineBytes);
+        }
+    }
+
+    private static int skipWritten(ByteBuffer[] buffers, int from, int to) {
+        while (from < to && !buffers[from].hasRemaining()) {
+            from++;
+        }
+        return from;
+    }
+}
@@ -0,0 +1,168 @@
+package kc.utils.minilogger;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Renders Throwables with their stack traces, causes, and suppressed exceptions into a line buffer. Every distinct
+ * trace gets a number. Traces are keyed by a hash over the exception classes and frames, but not the messages, so that
+ * a trace seen before is rendered as a one-line reference to its number instead of in full again.
+ *
+ * Rendering takes two steps: prepare renders the trace, unless it has been seen before, without holding any lock,
+ * and append numbers it, which must be done holding the lock that orders the lines, so that a reference is never
+ * written before the trace it refers to, nor after a roll has forgotten it.
+ */
+class StackTraceRenderer {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final int MAX_REMEMBERED_TRACES = 1024;
+
+    /**
+     * A Throwable with its structural hash and, if it has not been seen before, its rendered trace.
+     */
+    static final class Trace {
+        private final Throwable throwable;
+        private final long hash;
+        // the trace following the first line, or null if it is likely to be rendered as a reference
+        private String body;
+
+        private Trace(Throwable throwable, long hash, String body) {
+            this.throwable = throwable;
+            this.hash = hash;
+            this.body = body;
+        }
+    }
+
+    // read without the lock by prepare, which can only be wrong about a trace being seen before in rare cases
+    private final Map<Long, Integer> traceNumbers = new ConcurrentHashMap<Long, Integer>();
+    private int lastTraceNumber = 0;
+
+    /**
+     * Prepares the given Throwable for append. Does not need any lock.
+     */
+    Trace prepare(Throwable throwable) {
+        long hash = structuralHash(throwable, new IdentityHashMap<Throwable, Boolean>());
+        return new Trace(throwable, hash, this.traceNumbers.containsKey(hash) ? null : renderBody(throwable));
+    }
+
+    /**
+     * Appends a line separator and the prepared Throwable to the line buffer, either in full or as a reference to a
+     * previously rendered identical trace. Must be called holding the lock that orders the lines written.
+     */
+    void append(StringBuilder line, Trace trace) {
+        Integer seen = this.traceNumbers.get(trace.hash);
+        if (seen != null) {
+            line.append(LINE_SEPARATOR).append(trace.throwable).append(" (same trace as #").append(seen.intValue()).append(')');
+            return;
+        }
+
+        if (this.traceNumbers.size() >= MAX_REMEMBERED_TRACES) {
+            this.traceNumbers.clear();
+        }
+        int number = ++this.lastTraceNumber;
+        this.traceNumbers.put(trace.hash, number);
+        line.append(LINE_SEPARATOR).append(trace.throwable).append(" [trace #").append(number).append(']');
+        appendBody(line, trace);
+    }
+
+    /**
+     * Appends a line separator and the prepared Throwable to the line buffer in full, without a number, for lines
+     * that are not ordered by a lock. Does not need any lock.
+     */
+    void appendInFull(StringBuilder line, Trace trace) {
+        line.append(LINE_SEPARATOR).append(trace.throwable);
+        appendBody(line, trace);
+    }
+
+    /**
+     * Appends a line separator and the given Throwable to the line buffer, see prepare and append. Must be called
+     * holding the lock that orders the lines written.
+     */
+    void append(StringBuilder line, Throwable throwable) {
+        append(line, prepare(throwable));
+    }
+
+    /**
+     * Forgets all previously rendered traces, e.g. when a log file is rolled and references would point to the
+     * previous file. Must be called holding the lock that orders the lines written.
+     */
+    void clear() {
+        this.traceNumbers.clear();
+    }
+
+    private void appendBody(StringBuilder line, Trace trace) {
+        if (trace.body == null) {
+            // it has been seen when prepared, but forgotten since, e.g. by a roll
+            trace.body = renderBody(trace.throwable);
+        }
+        line.append(trace.body);
+    }
+
+    private String renderBody(Throwable throwable) {
+        StringBuilder body = new StringBuilder();
+        StackTraceElement[] frames = throwable.getStackTrace();
+        appendFrames(body, frames, null, "");
+        appendRelated(body, throwable, frames, "", new IdentityHashMap<Throwable, Boolean>());
+        return body.toString();
+    }
+
+    private void appendRelated(StringBuilder line, Throwable throwable, StackTraceElement[] frames, String indent, Map<Throwable, Boolean> visited) {
+        visited.put(throwable, Boolean.TRUE);
+        for (Throwable suppressed : throwable.getSuppressed()) {
+            appendEnclosed(line, suppressed, frames, indent + "\t", "Suppressed: ", visited);
+        }
+        if (throwable.getCause() != null) {
+            appendEnclosed(line, throwable.getCause(), frames, indent, "Caused by: ", visited);
+        }
+    }
+
+    private void appendEnclosed(StringBuilder line, Throwable throwable, StackTraceElement[] enclosingFrames, String indent, String caption, Map<Throwable, Boolean> visited) {
+        if (visited.containsKey(throwable)) {
+            line.append(LINE_SEPARATOR).append(indent).append("[CIRCULAR REFERENCE: ").append(throwable).append(']');
+            return;
+        }
+        line.append(LINE_SEPARATOR).append(indent).append(caption).append(throwable);
+        StackTraceElement[] frames = throwable.getStackTrace();
+        appendFrames(line, frames, enclosingFrames, indent);
+        appendRelated(line, throwable, frames, indent, visited);
+    }
+
+    // appends frames, eliding the ones in common with the enclosing trace like Throwable.printStackTrace does
+    private static void appendFrames(StringBuilder line, StackTraceElement[] frames, StackTraceElement[] enclosingFrames, String indent) {
+        int last = frames.length - 1;
+        if (enclosingFrames != null) {
+            for (int enclosing = enclosingFrames.length - 1;
+                 last >= 0 && enclosing >= 0 && frames[last].equals(enclosingFrames[enclosing]);
+                 last--, enclosing--) {
+                // skip frames in common
+            }
+        }
+        for (int i = 0; i <= last; i++) {
+            line.append(LINE_SEPARATOR).append(indent).append("\tat ").append(frames[i]);
+        }
+        if (last < frames.length - 1) {
+            line.append(LINE_SEPARATOR).append(indent).append("\t... ").append(frames.length - 1 - last).append(" more");
+        }
+    }
+
+    private static long structuralHash(Throwable throwable, Map<Throwable, Boolean> visited) {
+        if (throwable == null || visited.put(throwable, Boolean.TRUE) != null) {
+            return 0;
+        }
+        long hash = mix(0xcbf29ce484222325L, throwable.getClass().getName().hashCode());
+        for (StackTraceElement frame : throwable.getStackTrace()) {
+            hash = mix(hash, frame.getClassName().hashCode());
+            hash = mix(hash, frame.getMethodName().hashCode());
+            hash = mix(hash, frame.getLineNumber());
+        }
+        for (Throwable suppressed : throwable.getSuppressed()) {
+            hash = mix(hash, structuralHash(suppressed, visited));
+        }
+        return mix(hash, structuralHash(throwable.getCause(), visited));
+    }
+
+    private static long mix(long hash, long value) {
+        return (hash ^ value) * 0x100000001b3L;
+    }
+}
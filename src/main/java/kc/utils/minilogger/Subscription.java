@@ -0,0 +1,109 @@
+package kc.utils.minilogger;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Receives the lines a MiniLogger writes, as created by MiniLogger.subscribe, e.g. to show them live on an admin
+ * page or to check them in tests. Lines are buffered up to a fixed capacity; when the buffer is full, lines are
+ * dropped according to the DropPolicy rather than making the logging threads wait for the subscriber. Lines are
+ * delivered without line separator. Progress lines, which only go to the console, are not delivered. Meant to be
+ * closed when done, e.g. with try-with-resources.
+ */
+public final class Subscription implements AutoCloseable {
+
+    /**
+     * What to drop when a line arrives while the buffer is full.
+     */
+    public enum DropPolicy {
+        /** drops the arriving line, keeping the lines that have been buffered the longest */
+        DROP_NEWEST,
+        /** drops the line that has been buffered the longest, keeping the most recent lines */
+        DROP_OLDEST
+    }
+
+    private final MiniLogger miniLogger;
+    private final Set<String> logNames;
+    private final boolean includeDebug;
+    private final DropPolicy dropPolicy;
+    private final BlockingQueue<String> lines;
+    private final AtomicLong dropped = new AtomicLong();
+
+    Subscription(MiniLogger miniLogger, Set<String> logNames, boolean includeDebug, int capacity, DropPolicy dropPolicy) {
+        this.miniLogger = miniLogger;
+        this.logNames = logNames;
+        this.includeDebug = includeDebug;
+        this.dropPolicy = dropPolicy;
+        this.lines = new ArrayBlockingQueue<String>(capacity);
+    }
+
+    boolean accepts(String logName, boolean isDebug) {
+        return (this.includeDebug || !isDebug) && (this.logNames == null || this.logNames.contains(logName));
+    }
+
+    // never blocks, drops a line instead if the buffer is full
+    void deliver(String line) {
+        if (this.dropPolicy == DropPolicy.DROP_NEWEST) {
+            if (!this.lines.offer(line)) {
+                this.dropped.incrementAndGet();
+            }
+            return;
+        }
+
+        while (!this.lines.offer(line)) {
+            if (this.lines.poll() != null) {
+                this.dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest buffered line.
+     *
+     * @return the line, or null if there is none
+     */
+    public String poll() {
+        return this.lines.poll();
+    }
+
+    /**
+     * Takes the oldest buffered line, waiting for one to arrive if there is none.
+     *
+     * @param timeout how long to wait at most
+     * @param unit the unit of the timeout
+     * @return the line, or null if none has arrived in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.lines.poll(timeout, unit);
+    }
+
+    /**
+     * Takes all buffered lines, oldest first.
+     *
+     * @param lines the collection to add the lines to
+     * @return the number of lines taken
+     */
+    public int drainTo(Collection<? super String> lines) {
+        return this.lines.drainTo(lines);
+    }
+
+    /**
+     * @return the number of lines dropped so far because the buffer was full
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Stops receiving lines. Lines buffered so far can still be taken.
+     */
+    @Override
+    public void close() {
+        this.miniLogger.unsubscribe(this);
+    }
+}
@@ -0,0 +1,28 @@
+package kc.utils.minilogger;
+
+/**
+ * Measures the time from its creation via Log.timer until it is closed and records it, in microseconds, to the
+ * metric it was created for. Meant to be used with try-with-resources.
+ */
+public final class Timer implements AutoCloseable {
+
+    private final MiniLogger miniLogger;
+    private final String logName;
+    private final String name;
+    private final long start;
+
+    Timer(MiniLogger miniLogger, String logName, String name) {
+        this.miniLogger = miniLogger;
+        this.logName = logName;
+        this.name = name;
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Records the time elapsed since this Timer was created.
+     */
+    @Override
+    public void close() {
+        this.miniLogger.record(this.logName, this.name, (System.nanoTime() - this.start) / 1000);
+    }
+}
@@ -0,0 +1,120 @@
+package kc.utils.minilogger;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the timestamps MiniLogger writes at the start of lines back into milliseconds, by translating the time pattern
+ * into a DateTimeFormatter. Only date/time conversions without flags, width, or precision are supported, and the
+ * pattern needs to determine the point in time, i.e. it needs a date as well as a time of day.
+ */
+final class TimestampParser {
+
+    private static final Pattern SPECIFIER = Pattern.compile("%(\\d+\\$|<)?([-#+ 0,(]*)(\\d+)?(\\.\\d+)?([tT]?)([a-zA-Z%])");
+
+    private final DateTimeFormatter formatter;
+
+    private TimestampParser(DateTimeFormatter formatter) {
+        this.formatter = formatter;
+    }
+
+    /**
+     * @param timePattern the time pattern the lines have been written with
+     * @return a parser for the timestamps written with the given time pattern
+     * @throws IllegalArgumentException if timestamps written with the given time pattern cannot be parsed
+     */
+    static TimestampParser of(String timePattern) {
+        DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder().parseCaseInsensitive();
+        Matcher matcher = SPECIFIER.matcher(timePattern);
+        int last = 0;
+        while (matcher.find()) {
+            builder.appendLiteral(timePattern.substring(last, matcher.start()));
+            char conversion = matcher.group(6).charAt(0);
+            if (conversion == '%') {
+                builder.appendLiteral('%');
+            } else if (conversion == 'n') {
+                builder.appendLiteral(System.getProperty("line.separator"));
+            } else if (matcher.group(5).length() == 0 || matcher.group(2).length() > 0 || matcher.group(3) != null || matcher.group(4) != null) {
+                throw new IllegalArgumentException("cannot parse timestamps of time pattern " + timePattern + "!");
+            } else if (conversion == 's') {
+                builder.appendValue(ChronoField.INSTANT_SECONDS);
+            } else {
+                String parsePattern = toParsePattern(conversion);
+                if (parsePattern == null) {
+                    throw new IllegalArgumentException("cannot parse timestamps of time pattern " + timePattern + "!");
+                }
+                builder.appendPattern(parsePattern);
+            }
+            last = matcher.end();
+        }
+        builder.appendLiteral(timePattern.substring(last));
+
+        // the pattern determines a point in time if a timestamp it has just written parses back to it
+        TimestampParser parser = new TimestampParser(builder.toFormatter(Locale.getDefault(Locale.Category.FORMAT))
+                                                            .withZone(ZoneId.systemDefault()));
+        Calendar now = Calendar.getInstance();
+        long millis = parser.parse(String.format(timePattern, now));
+        if (millis == Long.MIN_VALUE || millis / 1000 != now.getTimeInMillis() / 1000) {
+            throw new IllegalArgumentException("cannot parse timestamps of time pattern " + timePattern + "!");
+        }
+        return parser;
+    }
+
+    private static String toParsePattern(char conversion) {
+        switch (conversion) {
+            case 'H': return "HH";
+            case 'I': return "hh";
+            case 'k': return "H";
+            case 'l': return "h";
+            case 'M': return "mm";
+            case 'S': return "ss";
+            case 'L': return "SSS";
+            case 'N': return "SSSSSSSSS";
+            case 'p': return "a";
+            case 'z': return "xx";
+            case 'Z': return "z";
+            case 'B': return "MMMM";
+            case 'b':
+            case 'h': return "MMM";
+            case 'A': return "EEEE";
+            case 'a': return "EEE";
+            case 'Y': return "uuuu";
+            case 'y': return "uu";
+            case 'j': return "DDD";
+            case 'm': return "MM";
+            case 'd': return "dd";
+            case 'e': return "d";
+            case 'R': return "HH:mm";
+            case 'T': return "HH:mm:ss";
+            case 'r': return "hh:mm:ss a";
+            case 'D': return "MM/dd/uu";
+            case 'F': return "uuuu-MM-dd";
+            case 'c': return "EEE MMM dd HH:mm:ss z uuuu";
+            default: return null;
+        }
+    }
+
+    /**
+     * @param line the line, or its start, to parse the timestamp at the start of
+     * @return the timestamp in milliseconds, or Long.MIN_VALUE if the line does not start with one, e.g. as it is part
+     * of a stack trace
+     */
+    long parse(CharSequence line) {
+        try {
+            TemporalAccessor timestamp = this.formatter.parse(line, new ParsePosition(0));
+            long millis = timestamp.getLong(ChronoField.INSTANT_SECONDS) * 1000;
+            return timestamp.isSupported(ChronoField.MILLI_OF_SECOND) ? millis + timestamp.get(ChronoField.MILLI_OF_SECOND) : millis;
+        } catch (DateTimeException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package kc.utils.minilogger;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class CallerLocatorTest {
+
+    @Test
+    public void testLocate() {
+        int line = new Throwable().getStackTrace()[0].getLineNumber() + 1;
+        String location = CallerLocator.locate();
+
+        Assert.assertEquals("CallerLocatorTest.testLocate:" + line, location);
+    }
+
+    @Test
+    public void testLocationsAreMemoizedPerCallSite() {
+        String first = null;
+        for (int i = 0; i < 3; i++) {
+            String location = CallerLocator.locate();
+            if (first == null) {
+                first = location;
+            }
+            Assert.assertSame(first, location);
+        }
+        Assert.assertNotEquals(first, CallerLocator.locate());
+    }
+
+    @Test
+    public void testLinesNameTheirCallSite() throws InterruptedException {
+        MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern(null)
+                .withTimePattern(null)
+                .withLogNameLength(3)
+                .withSeparator(" ")
+                .withCallerLocation(true)
+                .build();
+        Subscription subscription = miniLogger.subscribe(null, true, 10, Subscription.DropPolicy.DROP_NEWEST);
+
+        Log log = miniLogger.getLog("log");
+        int line = new Throwable().getStackTrace()[0].getLineNumber() + 1;
+        log.info("hello %s", "world");
+        log.debug("suppressed");
+        log.timer("metric").close();
+        miniLogger.flushMetrics();
+        miniLogger.setCallerLocation(false);
+        log.info("bye");
+
+        Assert.assertEquals("log CallerLocatorTest.testLinesNameTheirCallSite:" + line + " hello world", subscription.poll());
+        String metricLine = subscription.poll();
+        Assert.assertTrue(metricLine, metricLine.startsWith("log metric: count=1 "));
+        Assert.assertEquals("log bye", subscription.poll());
+        subscription.close();
+    }
+
+    @Test
+    @Ignore("benchmark, run manually")
+    public void benchmarkLocate() {
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 100000; i++) {
+                CallerLocator.locate();
+            }
+            long walked = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < 100000; i++) {
+                Thread.currentThread().getStackTrace();
+            }
+            long captured = System.nanoTime() - start;
+
+            System.out.printf("locate: %d ns/call, getStackTrace: %d ns/call%n", walked / 100000, captured / 100000);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package kc.utils.minilogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public class HeavyHittersTest {
+
+    @Test
+    public void testHeavyHittersAreFoundAmongNoise() {
+        HeavyHitters heavyHitters = new HeavyHitters(3, 0);
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 3) {
+                heavyHitters.record("Server", "handled request %d", false, 30);
+            } else if (kind < 5) {
+                heavyHitters.record("Cache", "miss for %s", true, 0);
+            } else if (kind < 6) {
+                heavyHitters.record("Server", "slow request %d", false, 25);
+            } else {
+                // thousands of distinct keys, each one rare
+                heavyHitters.record("Noise" + random.nextInt(100), "noise " + random.nextInt(100), false, 10);
+            }
+        }
+
+        List<HeavyHitter> top = heavyHitters.top();
+        Assert.assertEquals(3, top.size());
+        assertHeavyHitter(top.get(0), "Server", "handled request %d", 30000, 0, 30);
+        assertHeavyHitter(top.get(1), "Cache", "miss for %s", 20000, 1, 0);
+        assertHeavyHitter(top.get(2), "Server", "slow request %d", 10000, 0, 25);
+        Assert.assertEquals(100000, heavyHitters.totalLines());
+    }
+
+    @Test
+    public void testNewHeavyHittersReplaceOldOnes() {
+        HeavyHitters heavyHitters = new HeavyHitters(2, 0);
+        for (int i = 0; i < 100; i++) {
+            heavyHitters.record("log", "a", false, 1);
+            heavyHitters.record("log", "b", false, 1);
+        }
+        for (int i = 0; i < 200; i++) {
+            heavyHitters.record("log", "c", false, 1);
+        }
+        heavyHitters.record(null, null, false, 1);
+
+        List<HeavyHitter> top = heavyHitters.top();
+        Assert.assertEquals(2, top.size());
+        Assert.assertEquals("c", top.get(0).getPattern());
+        Assert.assertEquals(200, top.get(0).getLines());
+        Assert.assertEquals(100, top.get(1).getLines());
+        Assert.assertEquals("log 'c': lines=200 suppressed=0 bytes=200", top.get(0).toString());
+    }
+
+    @Test
+    public void testRetiredStripesAreClearedAndReused() {
+        HeavyHitters retired = new HeavyHitters(2, 0);
+        for (int i = 0; i < 100; i++) {
+            retired.record("log", "a", false, 1);
+        }
+        HeavyHitters heavyHitters = new HeavyHitters(2, 0, retired);
+        for (int i = 0; i < 10; i++) {
+            heavyHitters.record("log", "b", false, 1);
+        }
+
+        List<HeavyHitter> top = heavyHitters.top();
+        Assert.assertEquals(1, top.size());
+        assertHeavyHitter(top.get(0), "log", "b", 10, 0, 1);
+        Assert.assertEquals(10, heavyHitters.totalLines());
+        // the stripes are shared now, the retired tracker no longer counts its own lines
+        Assert.assertEquals(0, retired.top().get(0).getLines());
+    }
+
+    @Test
+    public void testLinesOfAllThreadsAreCounted() throws InterruptedException {
+        final HeavyHitters heavyHitters = new HeavyHitters(2, 0);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        heavyHitters.record("log", "shared", false, 2);
+                        heavyHitters.record("log", thread % 2 == 0 ? "even" : "odd", true, 0);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // the counts of a key are summed over the stripes of all threads that logged it
+        List<HeavyHitter> top = heavyHitters.top();
+        Assert.assertEquals(2, top.size());
+        Assert.assertEquals("log 'shared': lines=8000 suppressed=0 bytes=16000", top.get(0).toString());
+        Assert.assertEquals(4000, top.get(1).getLines());
+        Assert.assertEquals(4000, top.get(1).getSuppressedLines());
+        Assert.assertEquals(16000, heavyHitters.totalLines());
+    }
+
+    @Test
+    public void testClaimReport() {
+        HeavyHitters heavyHitters = new HeavyHitters(1, 1000);
+        long start = heavyHitters.startMillis();
+        Assert.assertFalse(heavyHitters.claimReport(start + 999));
+        Assert.assertTrue(heavyHitters.claimReport(start + 1000));
+        Assert.assertFalse(heavyHitters.claimReport(start + 1000));
+        Assert.assertFalse(heavyHitters.claimReport(start + 5000));
+
+        Assert.assertFalse(new HeavyHitters(1, 0).claimReport(Long.MAX_VALUE));
+    }
+
+    // estimates never undercount, and with these few keys they barely overcount
+    private static void assertHeavyHitter(HeavyHitter heavyHitter, String logName, String pattern, long expectedLines, double suppressedRatio, int bytesPerLine) {
+        Assert.assertEquals(logName, heavyHitter.getLogName());
+        Assert.assertEquals(pattern, heavyHitter.getPattern());
+        Assert.assertEquals(expectedLines, heavyHitter.getLines(), expectedLines * 0.05);
+        Assert.assertEquals(suppressedRatio * heavyHitter.getLines(), heavyHitter.getSuppressedLines(), expectedLines * 0.05);
+        Assert.assertEquals(bytesPerLine * heavyHitter.getLines(), heavyHitter.getBytes(), Math.max(bytesPerLine, 10) * expectedLines * 0.05);
+    }
+}
@@ -0,0 +1,72 @@
+package kc.utils.minilogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testEmpty() {
+        Histogram histogram = new Histogram();
+
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMin());
+        Assert.assertEquals(0, histogram.getMax());
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+
+        Assert.assertEquals(50, histogram.getCount());
+        Assert.assertEquals(1, histogram.getMin());
+        Assert.assertEquals(50, histogram.getMax());
+        Assert.assertEquals(25, histogram.getValueAtPercentile(50));
+        Assert.assertEquals(50, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testLargeValuesWithinRelativeError() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertWithin(50000000L, histogram.getValueAtPercentile(50));
+        assertWithin(99000000L, histogram.getValueAtPercentile(99));
+        assertWithin(99900000L, histogram.getValueAtPercentile(99.9));
+        Assert.assertEquals(1000L, histogram.getMin());
+        Assert.assertEquals(100000000L, histogram.getMax());
+    }
+
+    @Test
+    public void testExtremeValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        Assert.assertEquals(0, histogram.getMin());
+        Assert.assertEquals(Long.MAX_VALUE, histogram.getMax());
+        Assert.assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        Histogram histogram = new Histogram();
+        histogram.record(7);
+        Histogram copy = histogram.copy();
+        histogram.record(9);
+
+        Assert.assertEquals(1, copy.getCount());
+        Assert.assertEquals(7, copy.getMax());
+        Assert.assertEquals("count=1 min=7 p50=7 p99=7 p999=7 max=7", copy.toString());
+    }
+
+    private void assertWithin(long expected, long actual) {
+        Assert.assertTrue(expected + " expected, but got " + actual, Math.abs(expected - actual) <= expected * 0.04);
+    }
+}
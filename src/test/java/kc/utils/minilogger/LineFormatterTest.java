@@ -0,0 +1,160 @@
+package kc.utils.minilogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.Map;
+
+public class LineFormatterTest {
+
+    @Test
+    public void testSameAsStringFormat() {
+        assertSameAsStringFormat("no params");
+        assertSameAsStringFormat("hello %s", "world");
+        assertSameAsStringFormat("%s and %s", null, Arrays.asList(1, 2));
+        assertSameAsStringFormat("%d%% done, %d left%n", 42, 7L);
+        assertSameAsStringFormat("%d %d %d", (byte) 1, (short) 2, new BigInteger("12345678901234567890"));
+        assertSameAsStringFormat("%03d|%-5s|%.2f|%x|%S", 7, "ab", 3.14159, 255, "up");
+        assertSameAsStringFormat("%2$s %1$s %<s", "a", "b");
+        assertSameAsStringFormat("%5%|%b|%c", true, 'c');
+        assertSameAsStringFormat("%s", 1.5);
+        assertSameAsStringFormat("extra params are ignored", 1, 2);
+    }
+
+    @Test
+    public void testPrimitives() {
+        Assert.assertEquals("processed 3 of 10", format("processed %d of %d", Args.of(3, 10)));
+        Assert.assertEquals("-9223372036854775808 as %s", format("%d as %%s", Args.of(Long.MIN_VALUE)));
+        Assert.assertEquals("0.1 0.30", format("%s %.2f", Args.of(0.1, 0.3)));
+        Assert.assertEquals(String.format("%.3e", 12345.678), format("%.3e", Args.of(12345.678)));
+    }
+
+    @Test
+    public void testPrimitivesKeepTheirKind() {
+        Assert.assertEquals("c", format("%c", Args.of('c')));
+        Assert.assertEquals("c", format("%s", Args.of('c')));
+        Assert.assertEquals(String.format("%x", -1), format("%x", Args.of(-1)));
+        Assert.assertEquals(String.format("%x %x", -1, -2), format("%x %x", Args.of(-1, -2)));
+        Assert.assertEquals(String.valueOf(1.1f), format("%s", Args.of(1.1f)));
+        Assert.assertEquals(String.format("%.3f", 1.1f), format("%.3f", Args.of(1.1f)));
+        Assert.assertEquals(String.format("%x", -1L), format("%x", Args.of(-1L)));
+    }
+
+    @Test(expected = IllegalFormatException.class)
+    public void testDoubleAsDecimalFails() {
+        format("%d", Args.of(1.5));
+    }
+
+    @Test(expected = IllegalFormatException.class)
+    public void testMissingParamFails() {
+        format("%s %s", Args.of("one"));
+    }
+
+    @Test(expected = IllegalFormatException.class)
+    public void testBrokenPatternFails() {
+        format("trailing %", Args.of());
+    }
+
+    @Test
+    public void testNestedCallsGetTheirOwnArgs() {
+        Object nested = new Object() {
+            @Override
+            public String toString() {
+                return format("<%s>", Args.of("inner"));
+            }
+        };
+        Assert.assertEquals("<inner> outer", format("%s %s", Args.of(nested, "outer")));
+        Assert.assertEquals("again", format("%s", Args.of("again")));
+    }
+
+    @Test
+    public void testBoundedSameAsStringFormatWithinLimits() {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("k", Arrays.asList("v", 1));
+        for (Object value : new Object[] {"text", new StringBuilder("chars"), Arrays.asList(1, null, "x"), map, new ArrayList<Object>(), new int[0]}) {
+            Assert.assertEquals(String.format("<%s>", value), format("<%s>", Args.of(value), 100, 100));
+        }
+    }
+
+    @Test
+    public void testArgumentsAreCut() {
+        String marker = LineFormatter.TRUNCATION_MARKER;
+        Assert.assertEquals("a=abcde" + marker + " b=xy", format("a=%s b=%s", Args.of("abcdefgh", "xy"), 5, 0));
+        Assert.assertEquals("[1, 2" + marker + "!", format("%s!", Args.of(Arrays.asList(1, 2, 3, 4)), 5, 0));
+        Assert.assertEquals("{k=[v" + marker, format("%s", Args.of(Collections.singletonMap("k", Arrays.asList("v", "w"))), 5, 0));
+        Assert.assertEquals("12345" + marker, format("%d", Args.of(1234567L), 5, 0));
+        Assert.assertEquals("3.141" + marker, format("%.6f", Args.of(3.14159265), 5, 0));
+    }
+
+    @Test
+    public void testLinesAreCut() {
+        String marker = LineFormatter.TRUNCATION_MARKER;
+        Assert.assertEquals("prefix 12" + marker, format("prefix %s", Args.of("123456"), 0, 9));
+        Assert.assertEquals("prefix 123456 suf" + marker, format("prefix %s suffix %s", Args.of("123456", "unused"), 0, 17));
+        Assert.assertEquals("pre" + marker, format("prefix %s", Args.of("123456"), 0, 3));
+        Assert.assertEquals("a=ab" + marker, format("a=%s b=%s", Args.of("abcdefgh", "xy"), 2, 7));
+        Assert.assertEquals("b " + marker, format("%2$s %1$s", Args.of("a", "b"), 0, 2));
+    }
+
+    @Test
+    public void testHugeCollectionsAreNotRendered() {
+        final int[] iterated = {0};
+        List<Integer> huge = new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                iterated[0]++;
+                return index;
+            }
+
+            @Override
+            public int size() {
+                return Integer.MAX_VALUE;
+            }
+        };
+
+        String line = format("%s", Args.of(huge), 20, 0);
+
+        Assert.assertEquals("[0, 1, 2, 3, 4, 5, 6" + LineFormatter.TRUNCATION_MARKER, line);
+        Assert.assertTrue(iterated[0] < 10);
+    }
+
+    @Test
+    public void testSelfReferences() {
+        List<Object> list = new ArrayList<Object>();
+        list.add(list);
+        list.add("x");
+        Assert.assertEquals(list.toString(), format("%s", Args.of(list), 100, 0));
+    }
+
+    private void assertSameAsStringFormat(String pattern, Object... params) {
+        Assert.assertEquals(String.format(pattern, params), format(pattern, Args.wrap(params)));
+    }
+
+    private String format(String pattern, Args args, int maxArgLength, int maxLineLength) {
+        StringBuilder line = new StringBuilder();
+        try {
+            LineFormatter.format(line, pattern, args, maxArgLength, maxLineLength);
+        } finally {
+            args.release();
+        }
+        return line.toString();
+    }
+
+    private String format(String pattern, Args args) {
+        StringBuilder line = new StringBuilder();
+        try {
+            LineFormatter.format(line, pattern, args);
+        } finally {
+            args.release();
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,153 @@
+package kc.utils.minilogger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class LogContextTest {
+
+    private final MiniLogger miniLogger = new MiniLoggerBuilder()
+            .withConsoleStream(null)
+            .withFileNamePattern(null)
+            .withTimePattern(null)
+            .withLogNameLength(3)
+            .withSeparator(" ")
+            .build();
+    private final Subscription subscription = this.miniLogger.subscribe(null, true, 100, Subscription.DropPolicy.DROP_NEWEST);
+    private final Log log = this.miniLogger.getLog("log");
+
+    @After
+    public void tearDown() {
+        this.subscription.close();
+        Assert.assertNull(LogContext.current());
+    }
+
+    @Test
+    public void testScopes() {
+        this.log.info("none");
+        try (LogContext request = this.miniLogger.putContext("request", 42)) {
+            this.log.info("one");
+            try (LogContext tenant = this.miniLogger.putContext("tenant", "acme")) {
+                this.log.info("two");
+                try (LogContext otherRequest = this.miniLogger.putContext("request", 43)) {
+                    Assert.assertSame(otherRequest, LogContext.current());
+                    this.log.info("overwritten");
+                }
+                try (LogContext removed = this.miniLogger.removeContext("request")) {
+                    Assert.assertSame(removed, LogContext.current());
+                    this.log.info("removed");
+                    this.log.progress("progress");
+                }
+                Assert.assertSame(tenant, LogContext.current());
+                this.log.info("restored");
+            }
+            Assert.assertSame(request, LogContext.current());
+            this.log.info("closed");
+        }
+        this.log.info("none again");
+
+        assertLines("log none",
+                    "log request=42 one",
+                    "log request=42 tenant=acme two",
+                    "log tenant=acme request=43 overwritten",
+                    "log tenant=acme removed",
+                    "log request=42 tenant=acme restored",
+                    "log request=42 closed",
+                    "log none again");
+    }
+
+    @Test
+    public void testEmptyContextAddsNothing() {
+        try (LogContext request = this.miniLogger.putContext("request", 42);
+             LogContext removed = this.miniLogger.removeContext("request")) {
+            Assert.assertNotSame(request, removed);
+            this.log.info("empty");
+        }
+
+        assertLines("log empty");
+    }
+
+    @Test
+    public void testNullKeysAreRejected() {
+        try {
+            this.miniLogger.putContext(null, 42);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            this.miniLogger.removeContext(null);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        this.log.info("none");
+
+        assertLines("log none");
+    }
+
+    @Test
+    public void testWrappedTasksRunWithTheCapturedContext() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Runnable runnable;
+            Callable<String> callable;
+            try (LogContext request = this.miniLogger.putContext("request", 42)) {
+                Assert.assertSame(request, LogContext.current());
+                runnable = this.miniLogger.wrap(new Runnable() {
+                    @Override
+                    public void run() {
+                        LogContextTest.this.log.info("runnable");
+                    }
+                });
+                callable = this.miniLogger.wrap(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        try (LogContext tenant = LogContextTest.this.miniLogger.putContext("tenant", "acme")) {
+                            Assert.assertSame(tenant, LogContext.current());
+                            LogContextTest.this.log.info("callable");
+                        }
+                        return "done";
+                    }
+                });
+            }
+
+            // the context of the calling thread has been closed already, the tasks keep theirs
+            executor.submit(runnable).get(10, TimeUnit.SECONDS);
+            Assert.assertEquals("done", executor.submit(callable).get(10, TimeUnit.SECONDS));
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    LogContextTest.this.log.info("unwrapped");
+                }
+            }).get(10, TimeUnit.SECONDS);
+
+            // a thread running a wrapped task gets its own context back
+            try (LogContext tenant = this.miniLogger.putContext("tenant", "other")) {
+                runnable.run();
+                Assert.assertSame(tenant, LogContext.current());
+                this.log.info("own");
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertLines("log request=42 runnable",
+                    "log request=42 tenant=acme callable",
+                    "log unwrapped",
+                    "log request=42 runnable",
+                    "log tenant=other own");
+    }
+
+    private void assertLines(String... expected) {
+        for (String line : expected) {
+            Assert.assertEquals(line, this.subscription.poll());
+        }
+        Assert.assertNull(this.subscription.poll());
+    }
+}
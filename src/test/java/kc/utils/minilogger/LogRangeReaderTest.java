@@ -0,0 +1,59 @@
+package kc.utils.minilogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+public class LogRangeReaderTest {
+
+    @Test
+    public void testCopyRange() throws IOException, InterruptedException {
+        MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern("target/range.txt")
+                .withTimePattern(null)
+                .withLogNameLength(0)
+                .withIndexInterval(2)
+                .build();
+
+        long first = logInNextSecond(miniLogger, "first\n");
+        long second = logInNextSecond(miniLogger, "second\n");
+        long third = logInNextSecond(miniLogger, "third\n");
+        miniLogger.setFileNamePattern(null);
+        miniLogger.toFileAndConsole("logname", false, "closing");
+
+        LogRangeReader reader = new LogRangeReader("target/range.txt");
+        Assert.assertEquals(SECOND, copyRange(reader, second, second + 999));
+        Assert.assertEquals(SECOND + THIRD, copyRange(reader, second + 500, third));
+        Assert.assertEquals(FIRST + SECOND + THIRD, copyRange(reader, 0, Long.MAX_VALUE));
+        Assert.assertEquals("", copyRange(reader, third + 1000, Long.MAX_VALUE));
+        Assert.assertEquals("", copyRange(reader, 0, first - 1));
+
+        Assert.assertTrue(new File("target/range.txt").delete());
+        Assert.assertTrue(new File("target/range.txt.idx").delete());
+    }
+
+    private static final String FIRST = "first\nfirst\nfirst\nfirst\nfirst\n";
+    private static final String SECOND = "second\nsecond\nsecond\nsecond\nsecond\n";
+    private static final String THIRD = "third\nthird\nthird\nthird\nthird\n";
+
+    // waits for the next second to start, logs the message five times right away and returns that second in millis
+    private long logInNextSecond(MiniLogger miniLogger, String message) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        Thread.sleep(1000 - now % 1000);
+        long second = System.currentTimeMillis() / 1000 * 1000;
+        for (int i = 0; i < 5; i++) {
+            miniLogger.toFileAndConsole("logname", false, message.trim());
+        }
+        return second;
+    }
+
+    private String copyRange(LogRangeReader reader, long from, long to) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        reader.copyRange(from, to, out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,168 @@
+package kc.utils.minilogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class LogSearchTest {
+
+    @Test
+    public void testSearchAcrossChunks() throws IOException {
+        MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern("target/search-a.txt")
+                .withTimePattern(null)
+                .withLogNameLength(5)
+                .withSeparator("|")
+                .build();
+        miniLogger.toFileAndConsole("alpha", false, "one %d", 1);
+        miniLogger.toFileAndConsole("beta", false, "two %d", 2);
+        miniLogger.toFileAndConsole("alpha", false, "three %d", 3);
+        miniLogger.toFileAndConsole("gamma", false, "alpha %d", 4);
+        miniLogger.setFileNamePattern(null);
+        miniLogger.toFileAndConsole("alpha", false, "closing");
+
+        // chunks of three bytes split almost every line
+        for (long chunkSize : new long[] {3, 7, 1024}) {
+            Assert.assertEquals(Arrays.asList("alpha|one 1", " beta|two 2", "alpha|three 3", "gamma|alpha 4"),
+                                new LogSearch("target/search-%c.txt").withChunkSize(chunkSize).search());
+            Assert.assertEquals(Arrays.asList("alpha|three 3"),
+                                new LogSearch("target/search-%c.txt").withChunkSize(chunkSize).withLiteral("three").search());
+            Assert.assertEquals(Arrays.asList("alpha|one 1", "alpha|three 3"),
+                                new LogSearch("target/search-%c.txt").withChunkSize(chunkSize).withLogName("alpha", 5, "|").search());
+            Assert.assertEquals(Arrays.asList(" beta|two 2", "gamma|alpha 4"),
+                                new LogSearch("target/search-%c.txt").withChunkSize(chunkSize).withRegex("[24]$").withParallelism(2).search());
+        }
+
+        Assert.assertTrue(new File("target/search-a.txt").delete());
+    }
+
+    @Test
+    public void testSearchTimeRangeInTimestampOrder() throws IOException {
+        writeIndexed("target/search-1.txt", new long[] {2000, 4000}, "b2\n", "b4\n");
+        writeIndexed("target/search-2.txt", new long[] {1000, 3000}, "a1\n", "a3\n");
+
+        Assert.assertEquals(Arrays.asList("a1", "b2", "a3", "b4"), new LogSearch("target/search-%tS.txt").search());
+        Assert.assertEquals(Arrays.asList("b2", "a3"),
+                            new LogSearch("target/search-%tS.txt").withTimeRange(2500, 3999).search());
+        Assert.assertEquals(Collections.emptyList(),
+                            new LogSearch("target/search-%tS.txt").withTimeRange(5000, 6000).search());
+
+        for (String file : new String[] {"target/search-1.txt", "target/search-2.txt"}) {
+            Assert.assertTrue(new File(file).delete());
+            Assert.assertTrue(new File(file + ".idx").delete());
+        }
+    }
+
+    @Test
+    public void testSearchTimeRangeByParsedTimestamps() throws IOException {
+        String timePattern = MiniLoggerBuilder.DEFAILT_TIME_PATTERN;
+        write("target/search-1.txt", "2017-08-28T14:02:02.000|b2\n", "2017-08-28T14:02:04.000|b4\n", "\tat trace of b4\n", "\tat more of b4\n");
+        write("target/search-2.txt", "2017-08-28T14:02:01.000|a1\n", "\tat trace of a1\n", "2017-08-28T14:02:03.000|a3\n");
+        long millis = LocalDateTime.parse("2017-08-28T14:02:00").atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        // small chunks start in the middle of stack traces, whose lines belong to the line before
+        for (long chunkSize : new long[] {5, 30, 1024}) {
+            for (long maxOverhang : new long[] {1, 1024}) {
+                LogSearch search = new LogSearch("target/search-%tS.txt").withTimePattern(timePattern).withChunkSize(chunkSize).withMaxOverhang(maxOverhang);
+                Assert.assertEquals(Arrays.asList("2017-08-28T14:02:01.000|a1", "\tat trace of a1", "2017-08-28T14:02:02.000|b2",
+                                                  "2017-08-28T14:02:03.000|a3", "2017-08-28T14:02:04.000|b4", "\tat trace of b4", "\tat more of b4"),
+                                    search.search());
+                Assert.assertEquals(Arrays.asList("\tat trace of a1"),
+                                    search.withLiteral("at ").withTimeRange(millis + 1000, millis + 1999).search());
+                Assert.assertEquals(Arrays.asList("\tat trace of b4", "\tat more of b4"),
+                                    search.withTimeRange(millis + 4000, millis + 4999).search());
+            }
+        }
+
+        for (String file : new String[] {"target/search-1.txt", "target/search-2.txt"}) {
+            Assert.assertTrue(new File(file).delete());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSearchTimeRangeWithoutIndexOrTimePattern() throws IOException {
+        write("target/search-1.txt", "2017-08-28T14:02:02.000|b2\n");
+        try {
+            new LogSearch("target/search-%tS.txt").withTimeRange(0, Long.MAX_VALUE).search();
+        } finally {
+            Assert.assertTrue(new File("target/search-1.txt").delete());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testSearchWithTheWrongTimePattern() throws IOException {
+        write("target/search-1.txt", "b2\n");
+        try {
+            new LogSearch("target/search-%tS.txt").withTimePattern(MiniLoggerBuilder.DEFAILT_TIME_PATTERN).search();
+        } finally {
+            Assert.assertTrue(new File("target/search-1.txt").delete());
+        }
+    }
+
+    @Test
+    public void testLinesLongerThanTheOverhang() throws IOException {
+        StringBuilder longLine = new StringBuilder("long");
+        for (int i = 0; i < 100; i++) {
+            longLine.append(' ').append(i);
+        }
+        FileOutputStream out = new FileOutputStream("target/search-long.txt");
+        out.write(("short 1\n" + longLine + "\nshort 2\n" + longLine + "\r\n" + longLine).getBytes());
+        out.close();
+
+        for (long chunkSize : new long[] {5, 64, 1024}) {
+            for (long maxOverhang : new long[] {1, 10, 1024}) {
+                LogSearch search = new LogSearch("target/search-%c%c%c%c.txt").withChunkSize(chunkSize).withMaxOverhang(maxOverhang);
+                Assert.assertEquals(Arrays.asList("short 1", longLine.toString(), "short 2", longLine.toString(), longLine.toString()), search.search());
+                Assert.assertEquals(Arrays.asList(longLine.toString(), longLine.toString(), longLine.toString()), search.withLiteral(" 99").search());
+            }
+        }
+
+        Assert.assertTrue(new File("target/search-long.txt").delete());
+    }
+
+    @Test
+    public void testCopyMatches() throws IOException {
+        writeIndexed("target/search-1.txt", new long[] {2000, 4000}, "b2\n", "b4\n");
+        writeIndexed("target/search-2.txt", new long[] {1000, 3000}, "a1\n", "a3\n");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(3, new LogSearch("target/search-%tS.txt").withRegex("[a-z][123]").copyMatches(out));
+        String separator = System.getProperty("line.separator");
+        Assert.assertEquals("a1" + separator + "b2" + separator + "a3" + separator, out.toString());
+
+        for (String file : new String[] {"target/search-1.txt", "target/search-2.txt"}) {
+            Assert.assertTrue(new File(file).delete());
+            Assert.assertTrue(new File(file + ".idx").delete());
+        }
+    }
+
+    private void write(String fileName, String... lines) throws IOException {
+        FileOutputStream out = new FileOutputStream(fileName);
+        for (String line : lines) {
+            out.write(line.getBytes());
+        }
+        out.close();
+    }
+
+    private void writeIndexed(String fileName, long[] millis, String... lines) throws IOException {
+        LogIndexWriter index = new LogIndexWriter(fileName, 1);
+        FileOutputStream out = new FileOutputStream(fileName);
+        long offset = 0;
+        for (int i = 0; i < lines.length; i++) {
+            index.lineAt(millis[i], offset);
+            out.write(lines[i].getBytes());
+            offset += lines[i].length();
+        }
+        out.close();
+        index.close();
+    }
+}
@@ -1,9 +1,14 @@
 package kc.utils.minilogger;
 
+import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 
+import java.lang.management.ManagementFactory;
+
 /**
  * Created by kclemens on 8/12/17.
  */
@@ -16,8 +21,99 @@ public class LogTest {
 
         log.debug("pattern", "hello", "world");
 
-        Mockito.verify(miniLogger).toFileAndConsole("name", true, "pattern", "hello", "world");
+        ArgumentCaptor<Args> args = ArgumentCaptor.forClass(Args.class);
+        Mockito.verify(miniLogger).toFileAndConsole(ArgumentMatchers.eq("name"), ArgumentMatchers.eq(true), ArgumentMatchers.<Throwable>isNull(), ArgumentMatchers.eq("pattern"), args.capture());
+        Mockito.verifyNoMoreInteractions(miniLogger);
+        Assert.assertArrayEquals(new Object[] {"hello", "world"}, args.getValue().toArray());
+    }
+
+    @Test
+    public void testDebugVarargs() {
+        MiniLogger miniLogger = Mockito.mock(MiniLogger.class);
+        Log log = new Log(miniLogger, "name");
+
+        log.debug("pattern", "a", "b", "c", "d", "e");
+
+        Mockito.verify(miniLogger).toFileAndConsole("name", true, "pattern", "a", "b", "c", "d", "e");
+        Mockito.verifyNoMoreInteractions(miniLogger);
+    }
+
+    @Test
+    public void testDebugPrimitives() {
+        MiniLogger miniLogger = Mockito.mock(MiniLogger.class);
+        Log log = new Log(miniLogger, "name");
+
+        log.debug("pattern", 1);
+        log.debug("pattern", 1, 2L);
+        log.debug("pattern", 'c');
+        log.debug("pattern", 1.5f);
+        log.debug("pattern", (byte) 1);
+
+        ArgumentCaptor<Args> args = ArgumentCaptor.forClass(Args.class);
+        Mockito.verify(miniLogger, Mockito.times(5)).toFileAndConsole(ArgumentMatchers.eq("name"), ArgumentMatchers.eq(true), ArgumentMatchers.<Throwable>isNull(), ArgumentMatchers.eq("pattern"), args.capture());
         Mockito.verifyNoMoreInteractions(miniLogger);
+        Assert.assertTrue(args.getAllValues().get(0).isIntegral(0));
+        Assert.assertArrayEquals(new Object[] {1}, args.getAllValues().get(0).toArray());
+        Assert.assertArrayEquals(new Object[] {1, 2L}, args.getAllValues().get(1).toArray());
+        Assert.assertArrayEquals(new Object[] {'c'}, args.getAllValues().get(2).toArray());
+        Assert.assertArrayEquals(new Object[] {1.5f}, args.getAllValues().get(3).toArray());
+        Assert.assertArrayEquals(new Object[] {(byte) 1}, args.getAllValues().get(4).toArray());
+    }
+
+    @Test
+    public void testPrimitivesAreFormattedLikeTheirWrappers() {
+        MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern(null)
+                .withTimePattern(null)
+                .withLogNameLength(0)
+                .build();
+        Subscription subscription = miniLogger.subscribe(null, true, 10, Subscription.DropPolicy.DROP_NEWEST);
+        Log log = miniLogger.getLog("name");
+
+        log.info("%c", 'x');
+        log.info("%x", -1);
+        log.info("%s", 'x');
+        log.info("%s", 1.1f);
+        log.info("%d", (short) -2);
+
+        Assert.assertEquals("x", subscription.poll());
+        Assert.assertEquals("ffffffff", subscription.poll());
+        Assert.assertEquals("x", subscription.poll());
+        Assert.assertEquals("1.1", subscription.poll());
+        Assert.assertEquals("-2", subscription.poll());
+        subscription.close();
+    }
+
+    @Test
+    public void testMixedPrimitivesAreFormattedLikeTheirWrappers() {
+        MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern(null)
+                .withTimePattern(null)
+                .withLogNameLength(0)
+                .build();
+        Subscription subscription = miniLogger.subscribe(null, true, 10, Subscription.DropPolicy.DROP_NEWEST);
+        Log log = miniLogger.getLog("name");
+
+        log.info("%d items in %.2f s", 3, 1.5);
+        log.info("%c %d", 65, 1L);
+        log.info("%s/%s", 'a', 'b');
+        log.info("%s %s", 1.1f, 2.2f);
+        log.info("%x %d", -1, 1L);
+        log.info("%s %s %x", 'a', 1.1f, -1);
+        log.info("%d %x %s", 1L, (byte) -1, 2.5);
+        log.info("%x", (byte) -1);
+
+        Assert.assertEquals("3 items in 1.50 s", subscription.poll());
+        Assert.assertEquals("A 1", subscription.poll());
+        Assert.assertEquals("a/b", subscription.poll());
+        Assert.assertEquals("1.1 2.2", subscription.poll());
+        Assert.assertEquals("ffffffff 1", subscription.poll());
+        Assert.assertEquals("a 1.1 ffffffff", subscription.poll());
+        Assert.assertEquals("1 ff 2.5", subscription.poll());
+        Assert.assertEquals("ff", subscription.poll());
+        subscription.close();
     }
 
     @Test
@@ -27,7 +123,44 @@ public class LogTest {
 
         log.info("pattern", "hello", "world");
 
-        Mockito.verify(miniLogger).toFileAndConsole("name", false, "pattern", "hello", "world");
+        ArgumentCaptor<Args> args = ArgumentCaptor.forClass(Args.class);
+        Mockito.verify(miniLogger).toFileAndConsole(ArgumentMatchers.eq("name"), ArgumentMatchers.eq(false), ArgumentMatchers.<Throwable>isNull(), ArgumentMatchers.eq("pattern"), args.capture());
+        Mockito.verifyNoMoreInteractions(miniLogger);
+        Assert.assertArrayEquals(new Object[] {"hello", "world"}, args.getValue().toArray());
+    }
+
+    @Test
+    public void testInfoVarargs() {
+        MiniLogger miniLogger = Mockito.mock(MiniLogger.class);
+        Log log = new Log(miniLogger, "name");
+
+        log.info("pattern", "a", "b", "c", "d", "e");
+
+        Mockito.verify(miniLogger).toFileAndConsole("name", false, "pattern", "a", "b", "c", "d", "e");
+        Mockito.verifyNoMoreInteractions(miniLogger);
+    }
+
+    @Test
+    public void testDebugThrowable() {
+        MiniLogger miniLogger = Mockito.mock(MiniLogger.class);
+        Log log = new Log(miniLogger, "name");
+        Exception exception = new Exception();
+
+        log.debug(exception, "pattern", "hello", "world");
+
+        Mockito.verify(miniLogger).toFileAndConsole("name", true, exception, "pattern", "hello", "world");
+        Mockito.verifyNoMoreInteractions(miniLogger);
+    }
+
+    @Test
+    public void testInfoThrowable() {
+        MiniLogger miniLogger = Mockito.mock(MiniLogger.class);
+        Log log = new Log(miniLogger, "name");
+        Exception exception = new Exception();
+
+        log.info(exception, "pattern", "hello", "world");
+
+        Mockito.verify(miniLogger).toFileAndConsole("name", false, exception, "pattern", "hello", "world");
         Mockito.verifyNoMoreInteractions(miniLogger);
     }
 
@@ -38,10 +171,84 @@ public class LogTest {
 
         log.progress("pattern", "hello", "world");
 
-        Mockito.verify(miniLogger).toConsoleNoNewline("name", "pattern", "hello", "world");
+        ArgumentCaptor<Args> args = ArgumentCaptor.forClass(Args.class);
+        Mockito.verify(miniLogger).toConsoleNoNewline(ArgumentMatchers.eq("name"), ArgumentMatchers.eq("pattern"), args.capture());
+        Mockito.verifyNoMoreInteractions(miniLogger);
+        Assert.assertArrayEquals(new Object[] {"hello", "world"}, args.getValue().toArray());
+    }
+
+    @Test
+    public void testProgressVarargs() {
+        MiniLogger miniLogger = Mockito.mock(MiniLogger.class);
+        Log log = new Log(miniLogger, "name");
+
+        log.progress("pattern", "a", "b", "c", "d", "e");
+
+        Mockito.verify(miniLogger).toConsoleNoNewline("name", "pattern", "a", "b", "c", "d", "e");
         Mockito.verifyNoMoreInteractions(miniLogger);
     }
 
+    @Test
+    public void testRecord() {
+        MiniLogger miniLogger = Mockito.mock(MiniLogger.class);
+        Log log = new Log(miniLogger, "name");
+
+        log.record("metric", 42);
+
+        Mockito.verify(miniLogger).record("name", "metric", 42);
+        Mockito.verifyNoMoreInteractions(miniLogger);
+    }
+
+    @Test
+    public void testTimer() throws InterruptedException {
+        MiniLogger miniLogger = Mockito.mock(MiniLogger.class);
+        Log log = new Log(miniLogger, "name");
+
+        try (Timer timer = log.timer("metric")) {
+            Thread.sleep(2);
+        }
+
+        ArgumentCaptor<Long> micros = ArgumentCaptor.forClass(Long.class);
+        Mockito.verify(miniLogger).record(ArgumentMatchers.eq("name"), ArgumentMatchers.eq("metric"), micros.capture());
+        Mockito.verifyNoMoreInteractions(miniLogger);
+        Assert.assertTrue(micros.getValue() >= 2000);
+    }
+
+    @Test
+    @Ignore
+    public void benchmarkAllocations() {
+        // counts the bytes allocated by this thread, which includes anything escape analysis did not remove; run with
+        // -XX:-DoEscapeAnalysis to see the allocations of the code as written
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withDebugEnabled(false)
+                .withProgressSilencePeriod(Long.MAX_VALUE / 2)
+                .build();
+        Log log = miniLogger.getLog();
+        int calls = 10000000;
+
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < calls; i++) {
+                log.debug("processed %d of %d", i, calls);
+                log.progress("processed %d of %d", i, calls);
+            }
+            long primitives = threads.getThreadAllocatedBytes(threadId) - before;
+
+            before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < calls; i++) {
+                log.debug("processed %d of %d", new Object[] {i, calls});
+                log.progress("processed %d of %d", new Object[] {i, calls});
+            }
+            long varargs = threads.getThreadAllocatedBytes(threadId) - before;
+
+            System.out.printf("round %d: %.2f bytes per call with primitive overloads, %.2f bytes per call with varargs%n",
+                              round, primitives / (2.0 * calls), varargs / (2.0 * calls));
+        }
+    }
+
     @Test
     @Ignore
     public void demoProgress() {
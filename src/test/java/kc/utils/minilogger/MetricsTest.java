@@ -0,0 +1,46 @@
+package kc.utils.minilogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricsTest {
+
+    @Test
+    public void testMetricsAreKeyedByLogAndMetricName() {
+        Metrics metrics = new Metrics(0);
+
+        Assert.assertSame(metrics.get("log", "metric"), metrics.get("log", "metric"));
+        Assert.assertNotSame(metrics.get("log", "metric"), metrics.get("other", "metric"));
+        Assert.assertNotSame(metrics.get("log", "metric"), metrics.get("log", "other"));
+        Assert.assertEquals(3, metrics.all().size());
+    }
+
+    @Test
+    public void testSwapStartsANewInterval() {
+        Metrics.Metric metric = new Metrics(0).get("log", "metric");
+
+        metric.record(1);
+        metric.record(2);
+        Assert.assertEquals(2, metric.swap().getCount());
+        metric.record(3);
+        Histogram histogram = metric.swap();
+        Assert.assertEquals(1, histogram.getCount());
+        Assert.assertEquals(3, histogram.getMax());
+        Assert.assertEquals(0, metric.swap().getCount());
+    }
+
+    @Test
+    public void testSummaryIsClaimedOncePerInterval() {
+        Metrics metrics = new Metrics(1000);
+        long now = System.currentTimeMillis();
+
+        Assert.assertFalse(metrics.claimSummary(now));
+        Assert.assertTrue(metrics.claimSummary(now + 1000));
+        Assert.assertFalse(metrics.claimSummary(now + 1000));
+        Assert.assertFalse(metrics.claimSummary(now + 1999));
+        Assert.assertTrue(metrics.claimSummary(now + 2000));
+
+        metrics.setInterval(0);
+        Assert.assertFalse(metrics.claimSummary(now + 10000));
+    }
+}
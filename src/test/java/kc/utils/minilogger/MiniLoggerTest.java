@@ -1,11 +1,31 @@
 package kc.utils.minilogger;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.Assert;
+import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.*;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by kclemens on 8/14/17.
@@ -312,6 +332,748 @@ public class MiniLoggerTest {
                                     "abcdefghij:sup\n");
     }
 
+    @Test
+    public void testConcurrentLinesAreNotInterleaved() throws InterruptedException, IOException {
+        final MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern("target/file.txt")
+                .withTimePattern(null)
+                .withLogNameLength(0)
+                .build();
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        miniLogger.toFileAndConsole("logname", false, "0123456789");
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < threads.length * 1000; i++) {
+            expected.append("0123456789\n");
+        }
+        assertFileContentsAndDelete("target/file.txt", expected.toString());
+    }
+
+    @Test
+    public void testConcurrentRollsKeepAllLines() throws IOException, InterruptedException {
+        // rolls every millisecond, so that threads often read the clock before and take the lock after a roll
+        String fileNamePattern = "target/rolls/%1$tH%1$tM%1$tS%1$tL.txt";
+        new File("target/rolls").mkdirs();
+        for (File file : new File("target/rolls").listFiles()) {
+            Assert.assertTrue(file.delete());
+        }
+        final MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern(fileNamePattern)
+                .withTimePattern(null)
+                .withLogNameLength(0)
+                .withIndexInterval(16)
+                .build();
+
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 5000; i++) {
+                        miniLogger.toFileAndConsole("logname", false, "t%d %d", thread, i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        miniLogger.setFileNamePattern(null);
+        miniLogger.toFileAndConsole("logname", false, "closing");
+
+        List<File> files = RolledFiles.expand(fileNamePattern);
+        Assert.assertTrue(files.size() > 1);
+        Set<String> lines = new HashSet<String>();
+        for (File file : files) {
+            for (String line : Files.readAllLines(file.toPath())) {
+                Assert.assertTrue(line, lines.add(line));
+            }
+        }
+        Assert.assertEquals(threads.length * 5000, lines.size());
+        for (File file : new File("target/rolls").listFiles()) {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testDurableLinesShareCommits() throws InterruptedException, IOException {
+        final MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern("target/file.txt")
+                .withTimePattern(null)
+                .withLogNameLength(0)
+                .withDurable(true)
+                .withCommitMaxWaitMicros(2000)
+                .withCommitBatchSize(8)
+                .build();
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 50; j++) {
+                        miniLogger.toFileAndConsole("logname", false, "durable");
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(threads.length * 50, miniLogger.getCommitLatencies().getCount());
+
+        miniLogger.setDurable(false);
+        miniLogger.toFileAndConsole("logname", false, "not durable");
+        Assert.assertEquals(threads.length * 50, miniLogger.getCommitLatencies().getCount());
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < threads.length * 50; i++) {
+            expected.append("durable\n");
+        }
+        assertFileContentsAndDelete("target/file.txt", expected.append("not durable\n").toString());
+    }
+
+    @Test
+    public void testFlightRecorderDumpsOnError() throws IOException {
+        MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern("target/file.txt")
+                .withTimePattern(null)
+                .withLogNameLength(0)
+                .withFlightRecorderSize(2)
+                .build();
+
+        miniLogger.toFileAndConsole("logname", true, "d%d", 1);
+        miniLogger.toFileAndConsole("logname", true, "d%d", 2);
+        miniLogger.toFileAndConsole("logname", false, "i1");
+        miniLogger.toFileAndConsole("logname", true, "d%d", 3);
+        miniLogger.toFileAndConsole("logname", false, new IllegalStateException(), "failed");
+        miniLogger.toFileAndConsole("logname", true, "d%d", 4);
+        miniLogger.dump();
+        miniLogger.dump();
+        miniLogger.setFlightRecorderSize(0);
+        miniLogger.toFileAndConsole("logname", true, "d%d", 5);
+        miniLogger.dump();
+
+        List<String> lines = Files.readAllLines(new File("target/file.txt").toPath());
+        Assert.assertEquals("i1", lines.get(0));
+        Assert.assertEquals("dumping 2 suppressed debug messages", lines.get(1));
+        Assert.assertEquals("d2", lines.get(2));
+        Assert.assertEquals("d3", lines.get(3));
+        Assert.assertEquals("end of dump", lines.get(4));
+        Assert.assertEquals("failed", lines.get(5));
+        Assert.assertEquals("java.lang.IllegalStateException [trace #1]", lines.get(6));
+        Assert.assertTrue(lines.get(7).startsWith("\tat "));
+        Assert.assertEquals("dumping 1 suppressed debug messages", lines.get(lines.size() - 3));
+        Assert.assertEquals("d4", lines.get(lines.size() - 2));
+        Assert.assertEquals("end of dump", lines.get(lines.size() - 1));
+        Assert.assertTrue(new File("target/file.txt").delete());
+    }
+
+    @Test
+    public void testDumpIsWrittenAtOnce() throws IOException {
+        MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern("target/file.txt")
+                .withTimePattern(null)
+                .withLogNameLength(0)
+                .withDurable(true)
+                .withFlightRecorderSize(8)
+                .build();
+
+        miniLogger.toFileAndConsole("logname", true, "d%d", 1);
+        miniLogger.toFileAndConsole("logname", true, new IllegalStateException("debug failure"), "d%d", 2);
+        miniLogger.toFileAndConsole("logname", true, "d%d", 3);
+        miniLogger.dump();
+
+        // all lines of a dump share a single commit
+        Assert.assertEquals(1, miniLogger.getCommitLatencies().getCount());
+
+        List<String> lines = Files.readAllLines(new File("target/file.txt").toPath());
+        Assert.assertEquals("dumping 3 suppressed debug messages", lines.get(0));
+        Assert.assertEquals("d1", lines.get(1));
+        Assert.assertEquals("d2", lines.get(2));
+        Assert.assertEquals("java.lang.IllegalStateException: debug failure [trace #1]", lines.get(3));
+        Assert.assertTrue(lines.get(4).startsWith("\tat kc.utils.minilogger.MiniLoggerTest.testDumpIsWrittenAtOnce("));
+        Assert.assertEquals("d3", lines.get(lines.size() - 2));
+        Assert.assertEquals("end of dump", lines.get(lines.size() - 1));
+        Assert.assertTrue(new File("target/file.txt").delete());
+    }
+
+    @Test
+    public void testMetricsAreSummarized() throws IOException, InterruptedException {
+        MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern("target/file.txt")
+                .withTimePattern(null)
+                .withLogNameLength(7)
+                .withMetricsInterval(0)
+                .build();
+
+        for (int i = 1; i <= 100; i++) {
+            miniLogger.record("logname", "latency", i);
+        }
+        miniLogger.record("logname", "size", 7);
+        miniLogger.flushMetrics();
+        miniLogger.flushMetrics();
+        miniLogger.record("logname", "size", 8);
+
+        miniLogger.setMetricsInterval(10);
+        Thread.sleep(20);
+        miniLogger.record("logname", "size", 9);
+
+        List<String> lines = Files.readAllLines(new File("target/file.txt").toPath());
+        Collections.sort(lines.subList(0, 2));
+        Assert.assertEquals(3, lines.size());
+        Assert.assertEquals("logname latency: count=100 min=1 p50=50 p99=98 p999=100 max=100", lines.get(0));
+        Assert.assertEquals("logname size: count=1 min=7 p50=7 p99=7 p999=7 max=7", lines.get(1));
+        Assert.assertEquals("logname size: count=2 min=8 p50=8 p99=9 p999=9 max=9", lines.get(2));
+        Assert.assertTrue(new File("target/file.txt").delete());
+    }
+
+    @Test
+    public void testShardedLinesAreMergedInOrder() throws IOException, InterruptedException {
+        final MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern("target/sharded.txt")
+                .withTimePattern("%1$tQ")
+                .withLogNameLength(0)
+                .withSharded(true)
+                .build();
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        miniLogger.toFileAndConsole("logname", false, "t%d %d", thread, i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        miniLogger.setSharded(false);
+        Assert.assertFalse(new File("target/sharded.txt").exists());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(4000, new ShardedLogReader("target/sharded.txt").copyMerged(out));
+
+        long lastMillis = 0;
+        int[] lastIndex = {-1, -1, -1, -1};
+        for (String line : out.toString().split(System.getProperty("line.separator"))) {
+            String[] parts = line.split(" ");
+            long millis = Long.parseLong(parts[0]);
+            int thread = Integer.parseInt(parts[1].substring(1));
+            int index = Integer.parseInt(parts[2]);
+            Assert.assertTrue(millis >= lastMillis);
+            Assert.assertEquals(lastIndex[thread] + 1, index);
+            lastMillis = millis;
+            lastIndex[thread] = index;
+        }
+
+        for (File shard : RolledFiles.expand("target/sharded.txt.shard%d")) {
+            Assert.assertTrue(shard.delete());
+        }
+    }
+
+    @Test
+    public void testShardedDumpKeepsShardsOrdered() throws IOException, InterruptedException {
+        MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern("target/sharded-dump.txt")
+                .withTimePattern(null)
+                .withLogNameLength(0)
+                .withFlightRecorderSize(8)
+                .build();
+        miniLogger.toFileAndConsole("logname", false, "before sharding");
+        miniLogger.setSharded(true);
+
+        miniLogger.toFileAndConsole("logname", true, "d1");
+        Thread.sleep(20);
+        miniLogger.toFileAndConsole("logname", false, "i1");
+        miniLogger.dump();
+        miniLogger.setSharded(false);
+
+        // the shared file has been closed when sharding was enabled, and not written to since
+        Assert.assertEquals(Collections.singletonList("before sharding"), Files.readAllLines(new File("target/sharded-dump.txt").toPath()));
+        Assert.assertTrue(new File("target/sharded-dump.txt").delete());
+
+        // the dumped line is older than the one before, but written at the current time
+        File shard = RolledFiles.expand("target/sharded-dump.txt.shard%d").get(0);
+        long lastMillis = 0;
+        for (String record : Files.readAllLines(shard.toPath())) {
+            long millis = Long.parseLong(record.substring(0, record.indexOf(' ')));
+            Assert.assertTrue(millis >= lastMillis);
+            lastMillis = millis;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Assert.assertEquals(4, new ShardedLogReader("target/sharded-dump.txt").copyMerged(out));
+        Assert.assertEquals("i1\ndumping 1 suppressed debug messages\nd1\nend of dump\n", out.toString());
+
+        for (File file : RolledFiles.expand("target/sharded-dump.txt.shard%d")) {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testSocketSinkSpillsToFileWhileCollectorIsDown() throws IOException, InterruptedException {
+        File socketFile = new File("target/minilogger.sock");
+        socketFile.delete();
+        MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern("target/file.txt")
+                .withTimePattern(null)
+                .withLogNameLength(0)
+                .withSocketAddress("unix:" + socketFile.getPath())
+                .build();
+
+        miniLogger.toFileAndConsole("logname", false, "spilled");
+
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketFile.toPath()));
+        // lines go to the file until the sink has connected
+        for (int i = 0; i < 500; i++) {
+            miniLogger.toFileAndConsole("logname", false, "probe %d", i);
+            List<String> lines = Files.readAllLines(new File("target/file.txt").toPath());
+            if (!lines.get(lines.size() - 1).equals("probe " + i)) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+        miniLogger.toFileAndConsole("logname", false, "sent");
+        SocketChannel collector = server.accept();
+        miniLogger.setSocketAddress(null);
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (collector.read(buffer) >= 0) {
+            received.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+        Assert.assertTrue(received.toString().endsWith("sent" + System.getProperty("line.separator")));
+        List<String> lines = Files.readAllLines(new File("target/file.txt").toPath());
+        Assert.assertEquals("spilled", lines.get(0));
+        Assert.assertFalse(lines.contains("sent"));
+
+        collector.close();
+        server.close();
+        Assert.assertTrue(socketFile.delete());
+        Assert.assertTrue(new File("target/file.txt").delete());
+    }
+
+    @Test
+    public void testSharedAppendKeepsLinesOfAllWriters() throws IOException, InterruptedException {
+        final MiniLogger[] miniLoggers = new MiniLogger[2];
+        for (int m = 0; m < miniLoggers.length; m++) {
+            miniLoggers[m] = new MiniLoggerBuilder()
+                    .withConsoleStream(null)
+                    .withFileNamePattern("target/shared.txt")
+                    .withTimePattern(null)
+                    .withLogNameLength(0)
+                    .withSharedAppend(true)
+                    .build();
+        }
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 500; i++) {
+                        miniLoggers[thread % 2].toFileAndConsole("logname", false, "writer %d line %d of a somewhat longer message", thread, i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (MiniLogger miniLogger : miniLoggers) {
+            miniLogger.setFileNamePattern(null);
+            miniLogger.toFileAndConsole("logname", false, "closing");
+        }
+
+        List<String> lines = Files.readAllLines(new File("target/shared.txt").toPath());
+        Assert.assertEquals(2000, lines.size());
+        for (String line : lines) {
+            Assert.assertTrue(line, line.matches("writer \\d line \\d+ of a somewhat longer message"));
+        }
+        Assert.assertTrue(new File("target/shared.txt").delete());
+    }
+
+    @Test
+    public void testSharedAppendKeepsLinesOfAnotherProcessAcrossRolls() throws IOException, InterruptedException {
+        String fileNamePattern = "target/shared-roll/%1$tH%1$tM%1$tS.txt";
+        File directory = new File("target/shared-roll");
+        directory.mkdirs();
+        for (File file : RolledFiles.expand(fileNamePattern)) {
+            Assert.assertTrue(file.delete());
+        }
+
+        // the other process writes to the same files, and tells once it is about to start
+        String java = new File(System.getProperty("java.home"), "bin/java").getPath();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), SharedAppendWriter.class.getName(), fileNamePattern, "child", "2000")
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        BufferedReader childOut = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        Assert.assertEquals("ready", childOut.readLine());
+        SharedAppendWriter.main(new String[] {fileNamePattern, "parent", "2000"});
+        Assert.assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+        Assert.assertEquals(0, process.exitValue());
+
+        // lines take about a millisecond each, so the writers have rolled at least once, and both have kept all lines
+        List<File> files = RolledFiles.expand(fileNamePattern);
+        Assert.assertTrue(files.size() >= 2);
+        Set<String> lines = new HashSet<String>();
+        for (File file : files) {
+            for (String line : Files.readAllLines(file.toPath())) {
+                Assert.assertTrue(line, line.matches("(parent|child) line \\d+ of a somewhat longer message"));
+                Assert.assertTrue(line, lines.add(line));
+            }
+            Assert.assertTrue(file.delete());
+        }
+        Assert.assertEquals(4000, lines.size());
+    }
+
+    /**
+     * Writes numbered lines to shared files, about one per millisecond, see
+     * testSharedAppendKeepsLinesOfAnotherProcessAcrossRolls. Arguments: file name pattern, writer name, line count.
+     */
+    public static class SharedAppendWriter {
+
+        public static void main(String[] args) throws InterruptedException {
+            MiniLogger miniLogger = new MiniLoggerBuilder()
+                    .withConsoleStream(null)
+                    .withFileNamePattern(args[0])
+                    .withTimePattern(null)
+                    .withLogNameLength(0)
+                    .withSharedAppend(true)
+                    .build();
+            System.out.println("ready");
+            System.out.flush();
+
+            for (int i = 0; i < Integer.parseInt(args[2]); i++) {
+                miniLogger.toFileAndConsole("logname", false, "%s line %d of a somewhat longer message", args[1], i);
+                Thread.sleep(1);
+            }
+            miniLogger.setFileNamePattern(null);
+            miniLogger.toFileAndConsole("logname", false, "closing");
+        }
+    }
+
+    @Test
+    public void testSharedAppendTruncatesOnlyStaleFiles() throws IOException, InterruptedException {
+        // file names repeat every minute, start right after a second begins so that the next steps take place in it
+        String fileNamePattern = "target/shared-period/%1$tS.txt";
+        File directory = new File("target/shared-period");
+        directory.mkdirs();
+        for (File file : RolledFiles.expand(fileNamePattern)) {
+            Assert.assertTrue(file.delete());
+        }
+        new File(directory, ".minilogger.lock").delete();
+        Thread.sleep(1050 - System.currentTimeMillis() % 1000);
+        long millis = System.currentTimeMillis();
+        File current = new File(String.format(fileNamePattern, millis));
+        File next = new File(String.format(fileNamePattern, millis + 1000));
+
+        // a file of a period no roll has been recorded for yet is appended to
+        Files.write(current.toPath(), "earlier\n".getBytes());
+        MiniLogger first = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern(fileNamePattern)
+                .withTimePattern(null)
+                .withLogNameLength(0)
+                .withSharedAppend(true)
+                .build();
+        first.toFileAndConsole("logname", false, "first");
+
+        // another writer rolling to the recorded file appends to it
+        MiniLogger second = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern(fileNamePattern)
+                .withTimePattern(null)
+                .withLogNameLength(0)
+                .withSharedAppend(true)
+                .build();
+        second.toFileAndConsole("logname", false, "second");
+
+        // the next file is left over from a minute ago, whoever rolls to it first truncates it, the other one appends
+        Files.write(next.toPath(), "stale\n".getBytes());
+        Thread.sleep(millis + 1050 - System.currentTimeMillis());
+        second.toFileAndConsole("logname", false, "second again");
+        first.toFileAndConsole("logname", false, "first again");
+
+        first.setFileNamePattern(null);
+        first.toFileAndConsole("logname", false, "closing");
+        second.setFileNamePattern(null);
+        second.toFileAndConsole("logname", false, "closing");
+
+        Assert.assertEquals(Arrays.asList("earlier", "first", "second"), Files.readAllLines(current.toPath()));
+        Assert.assertEquals(Arrays.asList("second again", "first again"), Files.readAllLines(next.toPath()));
+        Assert.assertTrue(current.delete());
+        Assert.assertTrue(next.delete());
+        Assert.assertTrue(new File(directory, ".minilogger.lock").delete());
+    }
+
+    @Test
+    public void testLongLinesAreTruncated() throws IOException {
+        MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(new FileOutputStream("target/console.txt"))
+                .withFileNamePattern("target/file.txt")
+                .withTimePattern(null)
+                .withLogNameLength(0)
+                .withProgressSilencePeriod(0)
+                .withConfigValue("maxArgLength", "4")
+                .withConfigValue("maxLineLength", "12")
+                .build();
+
+        miniLogger.toFileAndConsole("logname", false, "short %s", "arg");
+        miniLogger.toFileAndConsole("logname", false, "long %s", Collections.nCopies(1000, "arg"));
+        miniLogger.setMaxArgLength(0);
+        miniLogger.toFileAndConsole("logname", false, "long %s", "argument");
+
+        String marker = LineFormatter.TRUNCATION_MARKER;
+        String expected = "short arg\nlong [arg" + marker + "\nlong argumen" + marker + "\n";
+        assertFileContentsAndDelete("target/console.txt", expected);
+        assertFileContentsAndDelete("target/file.txt", expected);
+    }
+
+    @Test
+    public void testHeavyHittersAreReported() throws IOException {
+        MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern("target/file.txt")
+                .withTimePattern(null)
+                .withLogNameLength(12)
+                .withSeparator(" ")
+                .withHeavyHitters(2)
+                .withHeavyHittersInterval(0)
+                .build();
+
+        Log chatty = miniLogger.getLog("chatty");
+        Log quiet = miniLogger.getLog("quiet");
+        for (int i = 0; i < 5; i++) {
+            chatty.debug("suppressed %d", i);
+            chatty.info("line %d", i);
+        }
+        chatty.debug("suppressed %d", 5);
+        quiet.info("once");
+
+        List<HeavyHitter> heavyHitters = miniLogger.getHeavyHitters();
+        Assert.assertEquals("chatty", heavyHitters.get(0).getLogName());
+        Assert.assertEquals("suppressed %d", heavyHitters.get(0).getPattern());
+        Assert.assertEquals(6, heavyHitters.get(0).getSuppressedLines());
+        Assert.assertEquals(5, heavyHitters.get(1).getLines());
+        Assert.assertEquals(5 * "      chatty line 0\n".getBytes().length, heavyHitters.get(1).getBytes());
+
+        // the report starts a new interval, which counts the report itself
+        miniLogger.reportHeavyHitters();
+        heavyHitters = miniLogger.getHeavyHitters();
+        Assert.assertEquals("HeavyHitters", heavyHitters.get(0).getLogName());
+        Assert.assertEquals(2, heavyHitters.get(0).getLines());
+
+        // the next interval takes over the cleared stripes of the first one, which no longer count the chatty lines
+        miniLogger.reportHeavyHitters();
+        heavyHitters = miniLogger.getHeavyHitters();
+        Assert.assertEquals(2, heavyHitters.size());
+        Assert.assertEquals("HeavyHitters", heavyHitters.get(0).getLogName());
+        Assert.assertEquals(2, heavyHitters.get(0).getLines());
+        Assert.assertEquals("HeavyHitters", heavyHitters.get(1).getLogName());
+        Assert.assertEquals(1, heavyHitters.get(1).getLines());
+        miniLogger.setHeavyHitters(0);
+        Assert.assertTrue(miniLogger.getHeavyHitters().isEmpty());
+        miniLogger.reportHeavyHitters();
+
+        assertFileContentsAndDelete("target/file.txt", "      chatty line 0\n      chatty line 1\n      chatty line 2\n      chatty line 3\n      chatty line 4\n       quiet once\n" +
+                                                       "HeavyHitters 12 lines in 0 s, heaviest first:\n" +
+                                                       "HeavyHitters chatty 'suppressed %d': lines=6 suppressed=6 bytes=0\n" +
+                                                       "HeavyHitters chatty 'line %d': lines=5 suppressed=0 bytes=100\n" +
+                                                       "HeavyHitters 3 lines in 0 s, heaviest first:\n" +
+                                                       "HeavyHitters HeavyHitters '%s': lines=2 suppressed=0 bytes=128\n" +
+                                                       "HeavyHitters HeavyHitters '%d lines in %d s, heaviest first:': lines=1 suppressed=0 bytes=46\n");
+    }
+
+    @Test
+    public void testDeferredConfiguration() throws IOException {
+        MiniLogger miniLogger = MiniLogger.deferred("/deferred.conf");
+        Log log = miniLogger.getLog("name");
+        Assert.assertFalse(miniLogger.isConfigured());
+
+        log.info("first");
+        Assert.assertTrue(miniLogger.isConfigured());
+        miniLogger.setFileNamePattern(null);
+        miniLogger.toFileAndConsole("logname", false, "closing");
+        assertFileContentsAndDelete("target/deferred.txt", "first\n");
+
+        // changes made before the first line is logged are applied on top of the config file
+        miniLogger = MiniLogger.deferred("/deferred.conf");
+        miniLogger.setLogNameLength(5);
+        Assert.assertTrue(miniLogger.isConfigured());
+        miniLogger.getLog("name").info("second");
+        miniLogger.setFileNamePattern(null);
+        miniLogger.toFileAndConsole("logname", false, "closing");
+        assertFileContentsAndDelete("target/deferred.txt", " name second\n");
+    }
+
+    @Test
+    @Ignore
+    public void benchmarkStartup() throws Exception {
+        // a config in a directory of its own to put on a class path
+        File configDir = new File("target/startup/config");
+        configDir.mkdirs();
+        byte[] config = "timePattern:\nconsole:\nfile: target/startup/startup.txt\ndebugEnabled: false\nmuteSet: a,b,c\n".getBytes();
+        Files.write(new File(configDir, "minilogger.conf").toPath(), config);
+
+        URL classes = MiniLogger.class.getProtectionDomain().getCodeSource().getLocation();
+        for (int round = 0; round < 3; round++) {
+            for (boolean isEager : new boolean[] {true, false}) {
+                int loaders = 50;
+                long classInit = 0;
+                long firstLog = 0;
+                for (int i = 0; i < loaders; i++) {
+                    // a fresh class loader initializes the MiniLogger classes again
+                    URLClassLoader loader = new URLClassLoader(new URL[] {classes, configDir.toURI().toURL()}, ClassLoader.getPlatformClassLoader());
+                    long start = System.nanoTime();
+                    Class<?> miniLoggerClass = Class.forName("kc.utils.minilogger.MiniLogger", true, loader);
+                    Object miniLogger = miniLoggerClass.getField("ROOT").get(null);
+                    if (isEager) {
+                        // what initializing ROOT used to do
+                        Class<?> builderClass = Class.forName("kc.utils.minilogger.MiniLoggerBuilder", true, loader);
+                        miniLogger = builderClass.getMethod("build").invoke(builderClass.getMethod("fromDefaultConfigFile").invoke(null));
+                    }
+                    long initialized = System.nanoTime();
+                    Object log = miniLoggerClass.getMethod("getLog", String.class).invoke(miniLogger, "startup");
+                    log.getClass().getMethod("info", String.class).invoke(log, "first line");
+                    long logged = System.nanoTime();
+                    miniLoggerClass.getMethod("setFileNamePattern", String.class).invoke(miniLogger, (Object) null);
+                    loader.close();
+
+                    classInit += initialized - start;
+                    firstLog += logged - start;
+                }
+                System.out.printf("%-5s config: class init %6d us, time to first log %6d us%n",
+                                  isEager ? "eager" : "lazy", classInit / loaders / 1000, firstLog / loaders / 1000);
+            }
+        }
+    }
+
+    @Test
+    @Ignore
+    public void benchmarkVirtualThreads() throws Exception {
+        MiniLogger miniLogger = new MiniLoggerBuilder()
+                .withConsoleStream(null)
+                .withFileNamePattern("target/benchmark.txt")
+                .build();
+        final Log log = miniLogger.getLog();
+        final Object monitor = new Object();
+
+        runOnVirtualThreads("ReentrantLock write path", 100000, new Runnable() {
+            @Override
+            public void run() {
+                log.info("hello from %s", Thread.currentThread());
+            }
+        });
+        // emulates the previous write path, where PrintStream held its monitor while writing to the file
+        runOnVirtualThreads("monitor write path", 100000, new Runnable() {
+            @Override
+            public void run() {
+                synchronized (monitor) {
+                    log.info("hello from %s", Thread.currentThread());
+                }
+            }
+        });
+
+        // the default console is System.err, a PrintStream taking its own monitor on every write; a PrintStream on a
+        // file stands in for it, so that the benchmark does not flood the terminal
+        PrintStream console = new PrintStream(new FileOutputStream("target/benchmark-console.txt"));
+        MiniLogger defaultConsoleLogger = new MiniLoggerBuilder()
+                .withConsoleStream(console)
+                .withFileNamePattern("target/benchmark.txt")
+                .build();
+        final Log defaultConsoleLog = defaultConsoleLogger.getLog();
+        runOnVirtualThreads("ReentrantLock write path with default PrintStream console", 100000, new Runnable() {
+            @Override
+            public void run() {
+                defaultConsoleLog.info("hello from %s", Thread.currentThread());
+            }
+        });
+        console.close();
+
+        Assert.assertTrue(new File("target/benchmark.txt").delete());
+        Assert.assertTrue(new File("target/benchmark-console.txt").delete());
+    }
+
+    private void runOnVirtualThreads(String name, int threadCount, Runnable task) throws Exception {
+        Method ofVirtual;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+        } catch (NoSuchMethodException e) {
+            System.out.println("skipping " + name + ", virtual threads need Java 21 or later");
+            return;
+        }
+        Object builder = ofVirtual.invoke(null);
+        Method unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+
+        Recording recording = new Recording();
+        recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO);
+        recording.start();
+
+        long start = System.nanoTime();
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = (Thread) unstarted.invoke(builder, task);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        recording.stop();
+        Path dump = Files.createTempFile("minilogger", ".jfr");
+        recording.dump(dump);
+        recording.close();
+        int pinned = 0;
+        for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+            if ("jdk.VirtualThreadPinned".equals(event.getEventType().getName())) {
+                pinned++;
+            }
+        }
+        Files.delete(dump);
+
+        System.out.printf("%s: %d lines in %d ms, %.0f lines/s, %d pinned events%n",
+                          name, threadCount, elapsed / 1000000, threadCount * 1e9 / elapsed, pinned);
+    }
+
     private void assertFileContentsAndDelete(String fileName, String expectedFileContents) throws IOException {
         int expectedBytes = expectedFileContents.toCharArray().length;
         char[] consoleBuffer = new char[expectedBytes];
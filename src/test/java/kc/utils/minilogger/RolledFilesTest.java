@@ -0,0 +1,38 @@
+package kc.utils.minilogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class RolledFilesTest {
+
+    @Test
+    public void testToRegex() {
+        Assert.assertEquals("log-2017-08-28.txt", matchOrNull("log-%tF.txt", "log-2017-08-28.txt"));
+        Assert.assertEquals("log13.txt", matchOrNull("log%tS.txt", "log13.txt"));
+        Assert.assertEquals("log-2017.08.txt", matchOrNull("log-%1$tY.%1$tm.txt", "log-2017.08.txt"));
+        Assert.assertEquals("log-Aug.txt", matchOrNull("log-%tb.txt", "log-Aug.txt"));
+        Assert.assertEquals("100%.txt", matchOrNull("100%%.txt", "100%.txt"));
+        Assert.assertNull(matchOrNull("log%tS.txt", "log13.txt.idx"));
+        Assert.assertNull(matchOrNull("log%tS.txt", "logxy.txt"));
+    }
+
+    @Test
+    public void testExpand() throws IOException {
+        File a = new File("target/rolled-02.txt");
+        File b = new File("target/rolled-01.txt");
+        File c = new File("target/rolled-01.txt.idx");
+        Assert.assertTrue(a.createNewFile() && b.createNewFile() && c.createNewFile());
+
+        Assert.assertEquals(Arrays.asList(b, a), RolledFiles.expand("target/rolled-%tS.txt"));
+
+        Assert.assertTrue(a.delete() && b.delete() && c.delete());
+    }
+
+    private String matchOrNull(String fileNamePattern, String fileName) {
+        return RolledFiles.toRegex(fileNamePattern).matcher(fileName).matches() ? fileName : null;
+    }
+}
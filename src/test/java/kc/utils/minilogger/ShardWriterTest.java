@@ -0,0 +1,51 @@
+package kc.utils.minilogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class ShardWriterTest {
+
+    @Test
+    public void testThreadsWriteToOwnShardsAndRollTogether() throws IOException, InterruptedException {
+        final ShardWriter shardWriter = new ShardWriter();
+
+        Assert.assertTrue(shardWriter.write("target/shards-a.txt", 1, "main\n".getBytes()));
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                shardWriter.write("target/shards-a.txt", 2, "other\n".getBytes());
+            }
+        };
+        thread.start();
+        thread.join();
+        Assert.assertEquals(2, shardWriter.openShardCount());
+        Assert.assertEquals("1 5 main\n", read("target/shards-a.txt.shard1"));
+        Assert.assertEquals("2 6 other\n", read("target/shards-a.txt.shard2"));
+
+        // rolling closes the shard of the dead thread and continues the shard of this thread in a new file
+        Assert.assertTrue(shardWriter.write("target/shards-b.txt", 3, "rolled\n".getBytes()));
+        Assert.assertFalse(shardWriter.write("target/shards-b.txt", 4, "again\n".getBytes()));
+        Assert.assertEquals(1, shardWriter.openShardCount());
+        Assert.assertEquals("3 7 rolled\n4 6 again\n", read("target/shards-b.txt.shard1"));
+
+        shardWriter.close();
+        Assert.assertEquals(0, shardWriter.openShardCount());
+
+        // a shard closed by a roll or close is continued rather than truncated
+        Assert.assertTrue(shardWriter.write("target/shards-b.txt", 5, "reopened\n".getBytes()));
+        Assert.assertEquals("3 7 rolled\n4 6 again\n5 9 reopened\n", read("target/shards-b.txt.shard1"));
+        shardWriter.close();
+
+        for (String shard : new String[] {"shards-a.txt.shard1", "shards-a.txt.shard2", "shards-b.txt.shard1"}) {
+            Assert.assertTrue(new File("target", shard).delete());
+        }
+    }
+
+    private static String read(String name) throws IOException {
+        return new String(Files.readAllBytes(new File(name).toPath()));
+    }
+}
@@ -0,0 +1,49 @@
+package kc.utils.minilogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class ShardedLogReaderTest {
+
+    @Test
+    public void testShardsAreMergedByTime() throws IOException {
+        writeShard("target/merge-1.txt.shard1", "10 3 a1\n", "30 3 a3\n", "30 3 a4\n");
+        writeShard("target/merge-1.txt.shard2", "20 3 b2\n", "30 9 b3\n\tat x\n");
+        writeShard("target/merge-1.txt.shard3");
+        writeShard("target/merge-0.txt.shard1", "40 3 c1\n");
+        writeShard("target/merge-0.txt.shard12", "50 3 c2\n", "60 3 c3");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long copied = new ShardedLogReader("target/merge-%d.txt").copyMerged(out);
+
+        Assert.assertEquals(8, copied);
+        Assert.assertEquals("a1\nb2\na3\na4\nb3\n\tat x\nc1\nc2\nc3", out.toString());
+
+        for (String shard : new String[] {"merge-1.txt.shard1", "merge-1.txt.shard2", "merge-1.txt.shard3", "merge-0.txt.shard1", "merge-0.txt.shard12"}) {
+            Assert.assertTrue(new File("target", shard).delete());
+        }
+    }
+
+    @Test
+    public void testShardNumber() {
+        Assert.assertEquals(7, ShardedLogReader.shardNumber(new File("log.txt.shard7")));
+        Assert.assertEquals(-1, ShardedLogReader.shardNumber(new File("log.txt.shard")));
+        Assert.assertEquals(-1, ShardedLogReader.shardNumber(new File("log.txt.shard7.bak")));
+    }
+
+    private static void writeShard(String name, String... records) throws IOException {
+        FileOutputStream out = new FileOutputStream(name);
+        try {
+            for (String record : records) {
+                out.write(record.getBytes("US-ASCII"));
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
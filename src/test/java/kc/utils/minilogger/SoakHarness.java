@@ -0,0 +1,236 @@
+package kc.utils.minilogger;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.Notification;
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a MiniLogger from a number of threads at a fixed total rate of calls, mixing info, debug, and progress calls,
+ * and reports latency percentiles, throughput, and GC pauses. Run it with mvn -Psoak test, see main for the
+ * parameters, e.g. mvn -Psoak test -Dsoak.threads=8 -Dsoak.config=my.conf
+ *
+ * Every thread has a schedule of intended start times. Latencies are measured from the intended rather than the
+ * actual start of a call, so that a stall delaying the calls queued up behind it shows up in all of them instead of
+ * just one, i.e. the measurement is corrected for coordinated omission. The uncorrected latencies are reported as
+ * well for comparison.
+ */
+public class SoakHarness {
+
+    private static final String[] KINDS = {"info", "debug", "progress"};
+
+    private final MiniLogger miniLogger;
+    private final int threadCount;
+    private final long rate;
+    private final long warmupNanos;
+    private final long durationNanos;
+    private final int[] mix;
+
+    private final Histogram[] corrected = new Histogram[KINDS.length];
+    private final Histogram[] uncorrected = new Histogram[KINDS.length];
+    private final Histogram gcPauses = new Histogram();
+
+    SoakHarness(MiniLogger miniLogger, int threadCount, long rate, long warmupSeconds, long durationSeconds, int[] mix) {
+        this.miniLogger = miniLogger;
+        this.threadCount = threadCount;
+        this.rate = rate;
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+        this.mix = mix;
+        for (int i = 0; i < KINDS.length; i++) {
+            this.corrected[i] = new Histogram();
+            this.uncorrected[i] = new Histogram();
+        }
+    }
+
+    void run() throws InterruptedException {
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        NotificationListener gcListener = new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+                if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    SoakHarness.this.gcPauses.record(info.getGcInfo().getDuration());
+                }
+            }
+        };
+
+        final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        final long measureFrom = start + this.warmupNanos;
+        final long end = measureFrom + this.durationNanos;
+        final long interval = TimeUnit.SECONDS.toNanos(1) * this.threadCount / this.rate;
+        final CountDownLatch done = new CountDownLatch(this.threadCount);
+
+        long gcCountBefore = 0;
+        long gcTimeBefore = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            gcCountBefore += collector.getCollectionCount();
+            gcTimeBefore += collector.getCollectionTime();
+            ((NotificationEmitter) collector).addNotificationListener(gcListener, null, null);
+        }
+
+        for (int t = 0; t < this.threadCount; t++) {
+            final int thread = t;
+            Thread worker = new Thread("soak-" + t) {
+                @Override
+                public void run() {
+                    try {
+                        drive(thread, start + thread * interval / SoakHarness.this.threadCount, interval, measureFrom, end);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            worker.start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - measureFrom;
+
+        long gcCount = -gcCountBefore;
+        long gcTime = -gcTimeBefore;
+        for (GarbageCollectorMXBean collector : collectors) {
+            gcCount += collector.getCollectionCount();
+            gcTime += collector.getCollectionTime();
+            try {
+                ((NotificationEmitter) collector).removeNotificationListener(gcListener);
+            } catch (ListenerNotFoundException e) {
+                // ignore this, the listener is gone anyway
+            }
+        }
+
+        report(elapsed, gcCount, gcTime);
+    }
+
+    private void drive(int thread, long firstStart, long interval, long measureFrom, long end) {
+        Log log = this.miniLogger.getLog("soak-" + thread);
+        long total = this.mix[0] + this.mix[1] + this.mix[2];
+        long sequence = 0;
+        for (long intended = firstStart; intended < end; intended += interval, sequence++) {
+            // wait for the intended start, but never skip a call when running behind
+            for (long now = System.nanoTime(); now < intended; now = System.nanoTime()) {
+                LockSupport.parkNanos(intended - now);
+            }
+
+            int kind;
+            long slot = (sequence * 7919) % total;
+            if (slot < this.mix[0]) {
+                kind = 0;
+            } else if (slot < this.mix[0] + this.mix[1]) {
+                kind = 1;
+            } else {
+                kind = 2;
+            }
+
+            long actual = System.nanoTime();
+            switch (kind) {
+                case 0:
+                    log.info("request %d of thread %d handled", sequence, thread);
+                    break;
+                case 1:
+                    log.debug("request %d of thread %d took %s", sequence, thread, "a while");
+                    break;
+                default:
+                    log.progress("thread %d at request %d", thread, sequence);
+                    break;
+            }
+            long finished = System.nanoTime();
+
+            if (intended >= measureFrom) {
+                this.corrected[kind].record((finished - intended) / 1000);
+                this.uncorrected[kind].record((finished - actual) / 1000);
+            }
+        }
+    }
+
+    private void report(long elapsedNanos, long gcCount, long gcTime) {
+        double seconds = this.durationNanos / 1e9;
+        long calls = 0;
+        System.out.printf("soak: threads=%d targetRate=%d/s duration=%.0fs mix=%d:%d:%d%n",
+                          this.threadCount, this.rate, seconds, this.mix[0], this.mix[1], this.mix[2]);
+        for (int i = 0; i < KINDS.length; i++) {
+            calls += this.corrected[i].getCount();
+            System.out.printf("%-8s corrected latency (us):   %s%n", KINDS[i], summary(this.corrected[i]));
+            System.out.printf("%-8s uncorrected latency (us): %s%n", KINDS[i], summary(this.uncorrected[i]));
+        }
+        System.out.printf("throughput: %.0f calls/s%n", calls / (elapsedNanos / 1e9));
+        System.out.printf("gc: collections=%d time=%dms durations (ms): %s%n", gcCount, gcTime, summary(this.gcPauses));
+    }
+
+    private static String summary(Histogram histogram) {
+        return String.format("count=%d p50=%d p99=%d p99.9=%d max=%d",
+                             histogram.getCount(),
+                             histogram.getValueAtPercentile(50),
+                             histogram.getValueAtPercentile(99),
+                             histogram.getValueAtPercentile(99.9),
+                             histogram.getMax());
+    }
+
+    /**
+     * Runs the harness, configured by system properties:
+     * soak.threads, the number of threads (4);
+     * soak.rate, the total target rate of calls per second (20000);
+     * soak.warmup, the seconds before measuring starts (5);
+     * soak.seconds, the seconds to measure (30);
+     * soak.mix, the ratio of info, debug, and progress calls (20:70:10);
+     * soak.config, a minilogger.conf style config file (none);
+     * soak.file, the file name pattern to log to, overriding the one of the config file (rolled every second).
+     *
+     * Without a config file, lines are written to the file and to a console stream that discards them.
+     *
+     * @param args ignored
+     * @throws IOException if the config file cannot be read
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Integer.parseInt(property("soak.threads", "4"));
+        long rate = Long.parseLong(property("soak.rate", "20000"));
+        long warmup = Long.parseLong(property("soak.warmup", "5"));
+        long seconds = Long.parseLong(property("soak.seconds", "30"));
+        String[] parts = property("soak.mix", "20:70:10").split(":");
+        int[] mix = {Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+        String config = property("soak.config", null);
+        String file = property("soak.file", null);
+
+        MiniLoggerBuilder builder;
+        if (config != null) {
+            InputStream in = new FileInputStream(config);
+            try {
+                builder = MiniLoggerBuilder.fromStream(in);
+            } finally {
+                in.close();
+            }
+        } else {
+            builder = new MiniLoggerBuilder()
+                    .withConsoleStream(OutputStream.nullOutputStream())
+                    .withFileNamePattern("target/soak/soak-%1$tH%1$tM%1$tS.log");
+        }
+        if (file != null) {
+            builder.withFileNamePattern(file);
+        }
+        if (builder.getFileNamePattern() != null) {
+            new File(builder.getFileNamePattern()).getAbsoluteFile().getParentFile().mkdirs();
+        }
+
+        new SoakHarness(builder.build(), threads, rate, warmup, seconds, mix).run();
+    }
+
+    // empty properties count as unset, as the soak profile passes all of them
+    private static String property(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        return value == null || value.length() == 0 ? defaultValue : value;
+    }
+}
@@ -0,0 +1,170 @@
+package kc.utils.minilogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SocketSinkTest {
+
+    @Test
+    public void testParseAddress() {
+        Assert.assertEquals(UnixDomainSocketAddress.of("/tmp/collector.sock"), SocketSink.parseAddress("unix:/tmp/collector.sock"));
+        Assert.assertEquals(new InetSocketAddress("localhost", 5170), SocketSink.parseAddress("tcp:localhost:5170"));
+        for (String invalid : new String[] {"localhost:5170", "tcp:localhost", "udp:localhost:5170"}) {
+            try {
+                SocketSink.parseAddress(invalid);
+                Assert.fail(invalid);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testSendsLinesToTcpCollector() throws IOException, InterruptedException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        List<byte[]> spilled = Collections.synchronizedList(new ArrayList<byte[]>());
+        SocketSink sink = new SocketSink("tcp:localhost:" + ((InetSocketAddress) server.getLocalAddress()).getPort(), spillTo(spilled));
+
+        awaitConnected(sink, true);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(sink.offer(("line " + i + "\n").getBytes()));
+            expected.append("line ").append(i).append('\n');
+        }
+        SocketChannel collector = server.accept();
+        sink.close();
+
+        Assert.assertEquals(expected.toString(), readAll(collector));
+        Assert.assertTrue(spilled.isEmpty());
+        collector.close();
+        server.close();
+    }
+
+    @Test
+    public void testReconnectsToUnixCollectorAndSpillsWhileDown() throws IOException, InterruptedException {
+        File socketFile = new File("target/collector.sock");
+        socketFile.delete();
+        List<byte[]> spilled = Collections.synchronizedList(new ArrayList<byte[]>());
+        SocketSink sink = new SocketSink("unix:" + socketFile.getPath(), spillTo(spilled));
+
+        // the collector is not there yet
+        Assert.assertFalse(sink.offer("early\n".getBytes()));
+
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketFile.toPath()));
+        awaitConnected(sink, true);
+        Assert.assertTrue(sink.offer("connected\n".getBytes()));
+        SocketChannel collector = server.accept();
+        Assert.assertEquals("connected\n", readLine(collector));
+
+        // the collector goes away, lines that have been taken but could not be sent are spilled
+        collector.close();
+        server.close();
+        Assert.assertTrue(socketFile.delete());
+        int offered = 0;
+        for (long deadline = System.currentTimeMillis() + 5000; sink.isConnected() && System.currentTimeMillis() < deadline; ) {
+            if (sink.offer("lost\n".getBytes())) {
+                offered++;
+            }
+            Thread.sleep(1);
+        }
+        Assert.assertFalse(sink.isConnected());
+        Assert.assertFalse(sink.offer("down\n".getBytes()));
+        sink.close();
+        Assert.assertTrue(offered > 0);
+        Assert.assertTrue(spilled.size() > 0 && spilled.size() <= offered);
+    }
+
+    @Test
+    public void testCloseDoesNotHangOnStuckCollector() throws IOException, InterruptedException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        List<byte[]> spilled = Collections.synchronizedList(new ArrayList<byte[]>());
+        SocketSink sink = new SocketSink("tcp:localhost:" + ((InetSocketAddress) server.getLocalAddress()).getPort(), spillTo(spilled), 200);
+
+        // the collector accepts, but does not read, so the socket buffers fill up
+        awaitConnected(sink, true);
+        SocketChannel collector = server.accept();
+        byte[] line = new byte[64 * 1024];
+        Arrays.fill(line, (byte) 'x');
+        line[line.length - 1] = '\n';
+        int offered = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (sink.offer(line)) {
+                offered++;
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        sink.close();
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assert.assertFalse(sink.offer(line));
+
+        // every line offered has either been received completely or spilled
+        int received = 0;
+        for (char c : readAll(collector).toCharArray()) {
+            if (c == '\n') {
+                received++;
+            }
+        }
+        Assert.assertTrue(spilled.size() > 0);
+        Assert.assertTrue(received + spilled.size() >= offered);
+        collector.close();
+        server.close();
+    }
+
+    private static SocketSink.Spill spillTo(final List<byte[]> spilled) {
+        return new SocketSink.Spill() {
+            @Override
+            public void spill(byte[] lineBytes) {
+                spilled.add(lineBytes);
+            }
+        };
+    }
+
+    private static void awaitConnected(SocketSink sink, boolean isConnected) throws InterruptedException {
+        for (long deadline = System.currentTimeMillis() + 5000; sink.isConnected() != isConnected && System.currentTimeMillis() < deadline; ) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(isConnected, sink.isConnected());
+    }
+
+    private static String readAll(SocketChannel channel) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (channel.read(buffer) >= 0) {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+        return out.toString();
+    }
+
+    private static String readLine(SocketChannel channel) throws IOException {
+        StringBuilder line = new StringBuilder();
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        while (line.length() == 0 || line.charAt(line.length() - 1) != '\n') {
+            buffer.clear();
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+            line.append((char) buffer.get(0));
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,88 @@
+package kc.utils.minilogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StackTraceRendererTest {
+
+    @Test
+    public void testFullTraceThenReference() {
+        StackTraceRenderer renderer = new StackTraceRenderer();
+        Exception[] exceptions = new Exception[2];
+        for (int i = 0; i < exceptions.length; i++) {
+            exceptions[i] = fail(i == 0 ? "first" : "second");
+        }
+        Exception first = exceptions[0];
+        Exception second = exceptions[1];
+
+        String full = render(renderer, first);
+        Assert.assertTrue(full, full.startsWith("\njava.lang.IllegalStateException: first [trace #1]\n\tat kc.utils.minilogger.StackTraceRendererTest.fail("));
+        Assert.assertTrue(full, full.contains("\nCaused by: java.io.IOException: cause\n\t... "));
+
+        Assert.assertEquals("\njava.lang.IllegalStateException: second (same trace as #1)", render(renderer, second));
+
+        renderer.clear();
+        Assert.assertTrue(render(renderer, second).startsWith("\njava.lang.IllegalStateException: second [trace #2]\n"));
+    }
+
+    @Test
+    public void testNumbersAreAssignedWhenAppended() {
+        StackTraceRenderer renderer = new StackTraceRenderer();
+        Exception[] exceptions = new Exception[3];
+        for (int i = 0; i < exceptions.length; i++) {
+            exceptions[i] = fail("e" + i);
+        }
+
+        // prepared in one order, appended in another, the first one appended is the full one
+        StackTraceRenderer.Trace first = renderer.prepare(exceptions[0]);
+        StackTraceRenderer.Trace second = renderer.prepare(exceptions[1]);
+        Assert.assertTrue(append(renderer, second).startsWith("\njava.lang.IllegalStateException: e1 [trace #1]\n\tat "));
+        Assert.assertEquals("\njava.lang.IllegalStateException: e0 (same trace as #1)", append(renderer, first));
+
+        // prepared as seen, but forgotten by a roll before being appended
+        StackTraceRenderer.Trace third = renderer.prepare(exceptions[2]);
+        renderer.clear();
+        String full = append(renderer, third);
+        Assert.assertTrue(full, full.startsWith("\njava.lang.IllegalStateException: e2 [trace #2]\n\tat kc.utils.minilogger.StackTraceRendererTest.fail("));
+        Assert.assertTrue(full, full.contains("\nCaused by: java.io.IOException: cause\n\t... "));
+
+        StringBuilder line = new StringBuilder();
+        renderer.appendInFull(line, renderer.prepare(exceptions[0]));
+        Assert.assertEquals(full.replace("e2 [trace #2]", "e0"), line.toString());
+    }
+
+    @Test
+    public void testDifferentTracesAreNotShared() {
+        StackTraceRenderer renderer = new StackTraceRenderer();
+
+        Assert.assertTrue(render(renderer, fail("a")).contains("[trace #1]"));
+        Assert.assertTrue(render(renderer, new IllegalStateException("b")).contains("[trace #2]"));
+        Assert.assertTrue(render(renderer, new IllegalArgumentException("b")).contains("[trace #3]"));
+    }
+
+    @Test
+    public void testCircularCause() {
+        StackTraceRenderer renderer = new StackTraceRenderer();
+        Exception a = new Exception("a");
+        Exception b = new Exception("b", a);
+        a.initCause(b);
+
+        Assert.assertTrue(render(renderer, a).contains("[CIRCULAR REFERENCE: java.lang.Exception: a]"));
+    }
+
+    private Exception fail(String message) {
+        return new IllegalStateException(message, new java.io.IOException("cause"));
+    }
+
+    private String append(StackTraceRenderer renderer, StackTraceRenderer.Trace trace) {
+        StringBuilder line = new StringBuilder();
+        renderer.append(line, trace);
+        return line.toString();
+    }
+
+    private String render(StackTraceRenderer renderer, Throwable throwable) {
+        StringBuilder line = new StringBuilder();
+        renderer.append(line, throwable);
+        return line.toString();
+    }
+}
@@ -0,0 +1,92 @@
+package kc.utils.minilogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class SubscriptionTest {
+
+    private final MiniLogger miniLogger = new MiniLoggerBuilder()
+            .withConsoleStream(null)
+            .withFileNamePattern(null)
+            .withTimePattern(null)
+            .withLogNameLength(0)
+            .build();
+
+    @Test
+    public void testFilterByNameAndLevel() throws InterruptedException {
+        Subscription all = this.miniLogger.subscribe(null, true, 10, Subscription.DropPolicy.DROP_NEWEST);
+        Subscription infoOfA = this.miniLogger.subscribe(Collections.singleton("a"), false, 10, Subscription.DropPolicy.DROP_NEWEST);
+        Subscription ofAAndB = this.miniLogger.subscribe(new HashSet<String>(Arrays.asList("a", "b")), true, 10, Subscription.DropPolicy.DROP_NEWEST);
+
+        this.miniLogger.enableDebug();
+        this.miniLogger.getLog("a").info("a info %d", 1);
+        this.miniLogger.getLog("a").debug("a debug");
+        this.miniLogger.getLog("b").info("b info");
+        this.miniLogger.getLog("c").debug("c debug");
+        this.miniLogger.getLog("c").progress("c progress");
+
+        Assert.assertEquals(Arrays.asList("a info 1", "a debug", "b info", "c debug"), drain(all));
+        Assert.assertEquals(Arrays.asList("a info 1"), drain(infoOfA));
+        Assert.assertEquals(Arrays.asList("a info 1", "a debug", "b info"), drain(ofAAndB));
+
+        // debug lines that are not written are not delivered either
+        this.miniLogger.disableDebug();
+        this.miniLogger.getLog("a").debug("a debug");
+        this.miniLogger.getLog("a").info("a info %d", 2);
+        Assert.assertEquals("a info 2", all.poll(1, TimeUnit.SECONDS));
+        Assert.assertNull(all.poll());
+
+        all.close();
+        infoOfA.close();
+        ofAAndB.close();
+    }
+
+    @Test
+    public void testDropPolicies() {
+        Subscription newest = this.miniLogger.subscribe(null, false, 2, Subscription.DropPolicy.DROP_NEWEST);
+        Subscription oldest = this.miniLogger.subscribe(null, false, 2, Subscription.DropPolicy.DROP_OLDEST);
+
+        Log log = this.miniLogger.getLog("log");
+        for (int i = 1; i <= 5; i++) {
+            log.info("line %d", i);
+        }
+
+        Assert.assertEquals(Arrays.asList("line 1", "line 2"), drain(newest));
+        Assert.assertEquals(3, newest.getDropped());
+        Assert.assertEquals(Arrays.asList("line 4", "line 5"), drain(oldest));
+        Assert.assertEquals(3, oldest.getDropped());
+
+        newest.close();
+        oldest.close();
+    }
+
+    @Test
+    public void testClose() {
+        Subscription first = this.miniLogger.subscribe(null, false, 10, Subscription.DropPolicy.DROP_NEWEST);
+        Subscription second = this.miniLogger.subscribe(null, false, 10, Subscription.DropPolicy.DROP_NEWEST);
+
+        Log log = this.miniLogger.getLog("log");
+        log.info("before");
+        first.close();
+        log.info("after");
+        second.close();
+        second.close();
+        log.info("closed");
+
+        Assert.assertEquals(Arrays.asList("before"), drain(first));
+        Assert.assertEquals(Arrays.asList("before", "after"), drain(second));
+    }
+
+    private static List<String> drain(Subscription subscription) {
+        List<String> lines = new ArrayList<String>();
+        subscription.drainTo(lines);
+        return lines;
+    }
+}
@@ -0,0 +1,36 @@
+package kc.utils.minilogger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Calendar;
+
+public class TimestampParserTest {
+
+    @Test
+    public void testParse() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2017, Calendar.AUGUST, 28, 14, 2, 3);
+        calendar.set(Calendar.MILLISECOND, 456);
+        long millis = calendar.getTimeInMillis();
+
+        String defaultPattern = MiniLoggerBuilder.DEFAILT_TIME_PATTERN;
+        Assert.assertEquals(millis, TimestampParser.of(defaultPattern).parse(String.format(defaultPattern, calendar) + "|name|message"));
+        Assert.assertEquals(millis - 456, TimestampParser.of("%tF %<tT").parse(String.format("%tF %<tT", calendar)));
+        Assert.assertEquals(millis - 456, TimestampParser.of("%tc").parse(String.format("%tc", calendar)));
+        Assert.assertEquals(millis, TimestampParser.of("%1$td.%1$tm.%1$ty %1$tH:%1$tM:%1$tS.%1$tL %%").parse(String.format("%1$td.%1$tm.%1$ty %1$tH:%1$tM:%1$tS.%1$tL %%", calendar)));
+        Assert.assertEquals(Long.MIN_VALUE, TimestampParser.of(defaultPattern).parse("\tat kc.utils.minilogger.TimestampParserTest.testParse"));
+    }
+
+    @Test
+    public void testUnparseablePatterns() {
+        for (String timePattern : new String[] {"%tT", "%5tY-%tm-%td %tT", "%s %tF %tT", "%tQ"}) {
+            try {
+                TimestampParser.of(timePattern);
+                Assert.fail(timePattern);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}